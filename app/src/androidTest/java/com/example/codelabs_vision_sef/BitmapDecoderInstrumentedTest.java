@@ -0,0 +1,88 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.util.Pair;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes real JPEGs on a device and measures the bitmaps alive at the peak of decoding and
+ * resizing them, sampled by {@link BitmapDecoder} against decoded at full resolution.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapDecoderInstrumentedTest {
+    private static final Pair<Integer, Integer> TARGET = new Pair<>(1080, 1920);
+
+    private static byte[] encodeJpeg(int width, int height) {
+        Bitmap source = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(source).drawColor(Color.GRAY);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        source.recycle();
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the bytes of the decoded bitmap and its resized copy, which are alive together.
+     */
+    private static long peakBytes(Bitmap decoded) {
+        Bitmap resized = MainActivity.resizeBitmap(decoded, TARGET);
+        long peak = decoded.getAllocationByteCount();
+        if (resized != decoded) {
+            peak += resized.getAllocationByteCount();
+            resized.recycle();
+        }
+        decoded.recycle();
+        return peak;
+    }
+
+    private static void checkPeak(int width, int height) {
+        byte[] jpeg = encodeJpeg(width, height);
+
+        Bitmap sampled = BitmapDecoder.decodeSampled(() -> new ByteArrayInputStream(jpeg),
+                TARGET.first, TARGET.second);
+        assertNotNull(sampled);
+        int sampleSize = BitmapDecoder.calculateInSampleSize(width, height,
+                TARGET.first, TARGET.second);
+        assertEquals(BitmapDecoder.estimateDecodedBytes(width, height, sampleSize),
+                sampled.getAllocationByteCount());
+        long sampledPeak = peakBytes(sampled);
+
+        Bitmap full = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        assertNotNull(full);
+        long fullPeak = peakBytes(full);
+
+        assertEquals(BitmapDecoder.estimatePeakBytes(width, height, TARGET.first, TARGET.second,
+                sampleSize), sampledPeak);
+        assertEquals(BitmapDecoder.estimatePeakBytes(width, height, TARGET.first, TARGET.second,
+                1), fullPeak);
+        assertTrue(width + "x" + height + " peaks at " + sampledPeak + " of " + fullPeak
+                + " bytes", sampledPeak * 2 < fullPeak);
+    }
+
+    @Test
+    public void peakAllocation_12mp() {
+        checkPeak(4000, 3000);
+    }
+
+    @Test
+    public void peakAllocation_12mpPortrait() {
+        checkPeak(3000, 4000);
+    }
+
+    @Test
+    public void peakAllocation_24mp() {
+        checkPeak(6000, 4000);
+    }
+}
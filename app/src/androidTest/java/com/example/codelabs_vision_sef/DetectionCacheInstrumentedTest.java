@@ -0,0 +1,217 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the memory and disk tiers of {@link DetectionCache}, its hit counters and its size cap on
+ * a device, where its handler, its in-memory cache and the bitmaps it hashes are real.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectionCacheInstrumentedTest {
+    private static final String TEXT_DETECTOR = "text-latin";
+    private static final RecognizedText TEXT = new RecognizedText(
+            new float[]{1, 2, 30, 40, 50, 2, 90, 40}, new String[]{"Please", "walk"});
+
+    private LifecycleRegistry lifecycle;
+    private LifecycleOwner owner;
+    private File directory;
+
+    /**
+     * Receives one lookup and lets the test thread wait for it.
+     */
+    private static final class Lookup<T> implements DetectionCache.Callback<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        DetectionCache.Key key;
+        T cached;
+
+        @Override
+        public void onResult(DetectionCache.Key key, T cached) {
+            this.key = key;
+            this.cached = cached;
+            done.countDown();
+        }
+
+        Lookup<T> await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return this;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        owner = () -> lifecycle;
+        lifecycle = LifecycleRegistry.createUnsafe(owner);
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
+        directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext()
+                .getCacheDir(), "detection-cache-test");
+        deleteDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+        deleteDirectory();
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private long directoryBytes() {
+        long bytes = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static Bitmap newImage(int color) {
+        Bitmap image = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        image.eraseColor(color);
+        return image;
+    }
+
+    private static Lookup<RecognizedText> findText(DetectionCache cache, Bitmap image)
+            throws InterruptedException {
+        Lookup<RecognizedText> lookup = new Lookup<>();
+        cache.findText(image, TEXT_DETECTOR, lookup);
+        return lookup.await();
+    }
+
+    /**
+     * Stores the text of an image that missed, and waits until it is on disk.
+     */
+    private static void putText(DetectionCache cache, Bitmap image) throws InterruptedException {
+        Lookup<RecognizedText> miss = findText(cache, image);
+        assertNull(miss.cached);
+        cache.putText(miss.key, TEXT);
+        // Lookups run after the writes queued before them.
+        findText(cache, image);
+    }
+
+    @Test
+    public void findText_hitsMemoryAfterPut() throws InterruptedException {
+        DetectionCache cache = new DetectionCache(owner, directory, 4, 1024 * 1024);
+        Bitmap image = newImage(Color.RED);
+
+        Lookup<RecognizedText> miss = findText(cache, image);
+        assertNull(miss.cached);
+        assertEquals(0, cache.getHitRate(), 0);
+        cache.putText(miss.key, TEXT);
+
+        assertEquals(TEXT, findText(cache, image).cached);
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(0, cache.getDiskHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5f, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void findText_readsTheDiskOfAnEarlierCache() throws InterruptedException {
+        Bitmap image = newImage(Color.RED);
+        putText(new DetectionCache(owner, directory, 4, 1024 * 1024), image);
+
+        DetectionCache cache = new DetectionCache(owner, directory, 4, 1024 * 1024);
+        assertEquals(TEXT, findText(cache, image).cached);
+        assertEquals(1, cache.getDiskHitCount());
+        // Read once, then served from memory.
+        assertEquals(TEXT, findText(cache, image).cached);
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void memory_keepsTheMostRecentEntries() throws InterruptedException {
+        DetectionCache cache = new DetectionCache(owner, directory, 1, 1024 * 1024);
+        Bitmap red = newImage(Color.RED);
+        Bitmap blue = newImage(Color.BLUE);
+        putText(cache, red);
+        putText(cache, blue);
+        long memoryHits = cache.getMemoryHitCount();
+
+        // Evicted from memory by the blue image, still on disk.
+        assertEquals(TEXT, findText(cache, red).cached);
+        assertEquals(1, cache.getDiskHitCount());
+        assertEquals(TEXT, findText(cache, red).cached);
+        assertEquals(memoryHits + 1, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void disk_isTrimmedToTheSizeCap() throws InterruptedException {
+        putText(new DetectionCache(owner, directory, 4, 1024 * 1024), newImage(Color.BLACK));
+        long fileBytes = directoryBytes();
+        deleteDirectory();
+
+        // Room for two results.
+        DetectionCache cache = new DetectionCache(owner, directory, 4, fileBytes * 5 / 2);
+        int[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.WHITE};
+        for (int color : colors) {
+            putText(cache, newImage(color));
+            // Keeps the modification times of the files apart.
+            Thread.sleep(20);
+        }
+        assertEquals(2, directory.listFiles().length);
+        assertTrue(directoryBytes() <= fileBytes * 5 / 2);
+
+        // The least recently used results were dropped.
+        DetectionCache reopened = new DetectionCache(owner, directory, 4, 1024 * 1024);
+        assertNull(findText(reopened, newImage(Color.RED)).cached);
+        assertEquals(TEXT, findText(reopened, newImage(Color.WHITE)).cached);
+    }
+
+    @Test
+    public void keys_followTheDetectorName() throws InterruptedException {
+        FaceDetectorSettings contours = new FaceDetectorSettings.Builder()
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
+                .build();
+        FaceDetectorSettings landmarks = new FaceDetectorSettings.Builder()
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                .build();
+
+        DetectionCache cache = new DetectionCache(owner, directory, 4, 1024 * 1024);
+        Bitmap image = newImage(Color.RED);
+        putText(cache, image);
+        Lookup<List<FaceData>> miss = new Lookup<>();
+        cache.findFaces(image, contours.getName(), miss);
+        assertNull(miss.await().cached);
+        cache.putFaces(miss.key, Collections.emptyList());
+
+        Lookup<List<FaceData>> hit = new Lookup<>();
+        cache.findFaces(image, contours.getName(), hit);
+        assertEquals(Collections.emptyList(), hit.await().cached);
+        Lookup<List<FaceData>> other = new Lookup<>();
+        cache.findFaces(image, landmarks.getName(), other);
+        assertNull(other.await().cached);
+    }
+}
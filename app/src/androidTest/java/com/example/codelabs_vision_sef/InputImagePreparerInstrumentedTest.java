@@ -0,0 +1,103 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks on a device, with real bitmaps, that {@link InputImagePreparer} only reuses a conversion
+ * while the pixels it was made from are unchanged, and that uncached conversions leave it kept.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InputImagePreparerInstrumentedTest {
+    private LifecycleRegistry lifecycle;
+    private LifecycleOwner owner;
+
+    @Before
+    public void setUp() {
+        owner = () -> lifecycle;
+        lifecycle = LifecycleRegistry.createUnsafe(owner);
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
+    }
+
+    @After
+    public void tearDown() {
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+    }
+
+    /**
+     * Luma of the first pixel of a converted image.
+     */
+    private static int firstLuma(Nv21Image image) {
+        return image.getBuffer().get(0) & 0xff;
+    }
+
+    @Test
+    public void prepareNow_reusesTheConversionOfAnUnchangedBitmap() {
+        InputImagePreparer preparer = new InputImagePreparer(owner, 2);
+        Bitmap bitmap = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+        Nv21Image first = preparer.prepareNow(bitmap);
+        Nv21Image second = preparer.prepareNow(bitmap);
+        assertSame(first, second);
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void prepareUncached_keepsTheCachedConversion() {
+        InputImagePreparer preparer = new InputImagePreparer(owner, 1);
+        Bitmap selected = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+        Bitmap frame = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+        Nv21Image first = preparer.prepareNow(selected);
+
+        Nv21Image frameImage = preparer.prepareUncached(frame);
+        Nv21Image frameAgain = preparer.prepareUncached(frame);
+        assertNotSame(frameImage, frameAgain);
+        frameImage.release();
+        frameAgain.release();
+
+        Nv21Image second = preparer.prepareNow(selected);
+        assertSame(first, second);
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void prepareNow_convertsAgainWhenTheBitmapChangedDuringConversion() {
+        Bitmap bitmap = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLACK);
+        InputImagePreparer preparer = new InputImagePreparer(owner, 2) {
+            private boolean changed;
+
+            @Override
+            Nv21Image convert(Bitmap source) {
+                Nv21Image image = super.convert(source);
+                if (!changed) {
+                    // The pixels were read already, the result shows the old ones.
+                    changed = true;
+                    source.eraseColor(Color.WHITE);
+                }
+                return image;
+            }
+        };
+
+        Nv21Image stale = preparer.prepareNow(bitmap);
+        assertEquals(16, firstLuma(stale));
+        Nv21Image current = preparer.prepareNow(bitmap);
+        assertNotSame(stale, current);
+        assertEquals(235, firstLuma(current));
+        stale.release();
+        current.release();
+    }
+}
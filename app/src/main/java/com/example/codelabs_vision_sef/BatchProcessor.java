@@ -0,0 +1,418 @@
+package com.example.codelabs_vision_sef;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceContour;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceLandmark;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs text recognition and face detection over many images without a screen, writing one JSON
+ * object per image and line.
+ * <p>
+ * <p>Images are taken from the source one at a time and handed to a fixed number of workers, each
+ * of which decodes its image sampled down to a maximum size, runs the detectors and writes the
+ * result. The source is not read ahead of the workers, so at most one decoded image per worker is
+ * in memory, whether the batch holds ten images or a million. Lines are written in the order the
+ * images finish, and name their image.
+ * <p>
+ * <p>Coordinates are in pixels of the analyzed image, whose size is part of every line.
+ */
+public class BatchProcessor {
+    private static final String TAG = "BatchProcessor";
+    // Images between two throughput log lines.
+    private static final int PROGRESS_INTERVAL = 50;
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList(
+            "jpg", "jpeg", "png", "webp", "bmp", "gif", "heic", "heif");
+
+    /**
+     * An image of the batch.
+     */
+    public static final class Item {
+        final String name;
+        final BitmapDecoder.StreamOpener opener;
+
+        /**
+         * @param name identifies the image in the output
+         */
+        public Item(String name, BitmapDecoder.StreamOpener opener) {
+            this.name = name;
+            this.opener = opener;
+        }
+
+        public static Item fromFile(File file) {
+            return new Item(file.getPath(), () -> new FileInputStream(file));
+        }
+
+        public static Item fromUri(ContentResolver resolver, Uri uri) {
+            return new Item(uri.toString(), () -> resolver.openInputStream(uri));
+        }
+    }
+
+    /**
+     * Counts and timing of a finished batch.
+     */
+    public static final class Summary {
+        public final int processedCount;
+        public final int failedCount;
+        public final long elapsedNanos;
+
+        Summary(int processedCount, int failedCount, long elapsedNanos) {
+            this.processedCount = processedCount;
+            this.failedCount = failedCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the images processed per second, failed ones included.
+         */
+        public float getImagesPerSecond() {
+            return imagesPerSecond(processedCount, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "Summary{processed=%d, failed=%d, elapsed=%d ms, %.2f images/s}",
+                    processedCount, failedCount, elapsedNanos / 1_000_000,
+                    getImagesPerSecond());
+        }
+    }
+
+    private final TextRecognizer textRecognizer;
+    private final FaceDetector faceDetector;
+    private final int parallelism;
+    private final int maxImageSize;
+
+    /**
+     * @param textRecognizer recognizer to run on every image, or null to skip text
+     * @param faceDetector   detector to run on every image, or null to skip faces
+     * @param parallelism    images processed at the same time
+     * @param maxImageSize   width and height images are sampled down to before detection; the
+     *                       decoder keeps them less than twice as large
+     */
+    public BatchProcessor(TextRecognizer textRecognizer, FaceDetector faceDetector,
+                          int parallelism, int maxImageSize) {
+        if (textRecognizer == null && faceDetector == null) {
+            throw new IllegalArgumentException("Nothing to detect");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.textRecognizer = textRecognizer;
+        this.faceDetector = faceDetector;
+        this.parallelism = parallelism;
+        this.maxImageSize = maxImageSize;
+    }
+
+    /**
+     * Processes every image of the source and writes their results, blocking until all are done.
+     * Interrupting the calling thread stops the batch.
+     *
+     * @throws IOException if writing a result failed; the batch stops at the first failure
+     */
+    public Summary run(Iterator<Item> items, Writer out) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, TAG));
+        // One permit per worker: the source is only read when a worker is free.
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicInteger processedCount = new AtomicInteger();
+        AtomicInteger failedCount = new AtomicInteger();
+        AtomicReference<IOException> writeError = new AtomicReference<>();
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            while (items.hasNext() && writeError.get() == null) {
+                Item item = items.next();
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        if (!process(item, out, writeError)) {
+                            failedCount.incrementAndGet();
+                        }
+                        int processed = processedCount.incrementAndGet();
+                        if (processed % PROGRESS_INTERVAL == 0) {
+                            Log.i(TAG, String.format(Locale.US, "%d images, %.2f images/s",
+                                    processed, imagesPerSecond(processed,
+                                            SystemClock.elapsedRealtimeNanos() - start)));
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // Wait for the images still being processed.
+            permits.acquire(parallelism);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (writeError.get() != null) {
+            throw writeError.get();
+        }
+        Summary summary = new Summary(processedCount.get(), failedCount.get(),
+                SystemClock.elapsedRealtimeNanos() - start);
+        Log.i(TAG, summary.toString());
+        return summary;
+    }
+
+    /**
+     * Decodes one image, runs the detectors on it and writes its line.
+     *
+     * @return whether the image was analyzed
+     */
+    private boolean process(Item item, Writer out, AtomicReference<IOException> writeError) {
+        JSONObject result = new JSONObject();
+        boolean analyzed = false;
+        Bitmap bitmap = null;
+        try {
+            result.put("source", item.name);
+            long start = SystemClock.elapsedRealtimeNanos();
+            bitmap = BitmapDecoder.decodeSampled(item.opener, maxImageSize, maxImageSize);
+            if (bitmap == null) {
+                result.put("error", "Unable to decode image");
+            } else {
+                result.put("width", bitmap.getWidth());
+                result.put("height", bitmap.getHeight());
+                InputImage image = InputImage.fromBitmap(bitmap, 0);
+                // Both detectors run at the same time on the same pixels.
+                Task<Text> text = textRecognizer != null ? textRecognizer.process(image) : null;
+                Task<List<Face>> faces = faceDetector != null ? faceDetector.process(image) : null;
+                if (text != null) {
+                    result.put("text", toJson(Tasks.await(text)));
+                }
+                if (faces != null) {
+                    result.put("faces", toJson(Tasks.await(faces)));
+                }
+                result.put("elapsedMs", (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000);
+                analyzed = true;
+            }
+        } catch (ExecutionException | JSONException e) {
+            Log.w(TAG, "Unable to analyze " + item.name, e);
+            putQuietly(result, "error", String.valueOf(e.getCause() != null ? e.getCause() : e));
+        } catch (InterruptedException e) {
+            // The batch is stopping, the image is left out.
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RuntimeException e) {
+            // A broken image must not end the batch.
+            Log.w(TAG, "Unable to analyze " + item.name, e);
+            putQuietly(result, "error", e.toString());
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+
+        String line = result.toString();
+        synchronized (out) {
+            if (writeError.get() == null) {
+                try {
+                    out.write(line);
+                    out.write('\n');
+                    // Each line is complete on disk as soon as its image is done.
+                    out.flush();
+                } catch (IOException e) {
+                    writeError.set(e);
+                }
+            }
+        }
+        return analyzed;
+    }
+
+    private static void putQuietly(JSONObject object, String name, String value) {
+        try {
+            object.put(name, value);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static float imagesPerSecond(int count, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0 : count * 1e9f / elapsedNanos;
+    }
+
+    /**
+     * Describes the blocks of the text with their lines, and the lines with their elements.
+     */
+    static JSONObject toJson(Text text) throws JSONException {
+        JSONArray blocks = new JSONArray();
+        for (Text.TextBlock block : text.getTextBlocks()) {
+            JSONArray lines = new JSONArray();
+            for (Text.Line line : block.getLines()) {
+                JSONArray elements = new JSONArray();
+                for (Text.Element element : line.getElements()) {
+                    elements.put(toJson(element.getText(), element.getBoundingBox()));
+                }
+                lines.put(toJson(line.getText(), line.getBoundingBox())
+                        .put("elements", elements));
+            }
+            blocks.put(toJson(block.getText(), block.getBoundingBox())
+                    .put("language", block.getRecognizedLanguage())
+                    .put("lines", lines));
+        }
+        return new JSONObject()
+                .put("text", text.getText())
+                .put("blocks", blocks);
+    }
+
+    private static JSONObject toJson(String text, Rect box) throws JSONException {
+        return new JSONObject()
+                .put("text", text)
+                .put("box", box != null ? toJson(box) : JSONObject.NULL);
+    }
+
+    /**
+     * Describes every face with its box, angles, probabilities, landmarks and contours. Contour and
+     * landmark types are the constants of {@link FaceContour} and {@link FaceLandmark}.
+     */
+    static JSONArray toJson(List<Face> faces) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Face face : faces) {
+            JSONArray landmarks = new JSONArray();
+            for (FaceLandmark landmark : face.getAllLandmarks()) {
+                PointF position = landmark.getPosition();
+                landmarks.put(new JSONObject()
+                        .put("type", landmark.getLandmarkType())
+                        .put("x", position.x)
+                        .put("y", position.y));
+            }
+            JSONArray contours = new JSONArray();
+            for (FaceContour contour : face.getAllContours()) {
+                JSONArray points = new JSONArray();
+                for (PointF point : contour.getPoints()) {
+                    points.put(point.x).put(point.y);
+                }
+                contours.put(new JSONObject()
+                        .put("type", contour.getFaceContourType())
+                        .put("points", points));
+            }
+            array.put(new JSONObject()
+                    .put("box", toJson(face.getBoundingBox()))
+                    .put("trackingId", orNull(face.getTrackingId()))
+                    .put("headEulerAngleX", face.getHeadEulerAngleX())
+                    .put("headEulerAngleY", face.getHeadEulerAngleY())
+                    .put("headEulerAngleZ", face.getHeadEulerAngleZ())
+                    .put("smilingProbability", orNull(face.getSmilingProbability()))
+                    .put("leftEyeOpenProbability", orNull(face.getLeftEyeOpenProbability()))
+                    .put("rightEyeOpenProbability", orNull(face.getRightEyeOpenProbability()))
+                    .put("landmarks", landmarks)
+                    .put("contours", contours));
+        }
+        return array;
+    }
+
+    private static JSONArray toJson(Rect box) {
+        return new JSONArray().put(box.left).put(box.top).put(box.right).put(box.bottom);
+    }
+
+    private static Object orNull(Object value) {
+        return value != null ? value : JSONObject.NULL;
+    }
+
+    /**
+     * Lists the images in a directory and its subdirectories, in name order. Directories are only
+     * listed when the walk reaches them.
+     */
+    public static Iterator<Item> walk(File directory) {
+        return new DirectoryWalker(directory);
+    }
+
+    static boolean isImage(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.US));
+    }
+
+    /**
+     * Walks a directory depth first, holding the listing of the directories on the current path.
+     */
+    private static final class DirectoryWalker implements Iterator<Item> {
+        // Files and directories still to visit, the next one first.
+        private final Deque<File> pending = new ArrayDeque<>();
+        private File next;
+
+        DirectoryWalker(File directory) {
+            pending.push(directory);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !pending.isEmpty()) {
+                File file = pending.pop();
+                if (file.isDirectory()) {
+                    File[] children = file.listFiles();
+                    if (children == null) {
+                        Log.w(TAG, "Unable to list " + file);
+                        continue;
+                    }
+                    Arrays.sort(children);
+                    for (int i = children.length - 1; i >= 0; i--) {
+                        pending.push(children[i]);
+                    }
+                } else if (isImage(file)) {
+                    next = file;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Item next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Item item = Item.fromFile(next);
+            next = null;
+            return item;
+        }
+    }
+
+    /**
+     * Turns content or file uris into items.
+     */
+    public static List<Item> fromUris(ContentResolver resolver, List<String> uris) {
+        List<Item> items = new ArrayList<>(uris.size());
+        for (String uri : uris) {
+            items.add(Item.fromUri(resolver, Uri.parse(uri)));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.codelabs_vision_sef;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+import android.util.Log;
+
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link BatchProcessor} over a directory or a list of uris given by the starting intent, see
+ * the README for the extras. Batches run one after the other in the foreground, so they keep
+ * running while the app is not visible.
+ */
+public class BatchService extends Service {
+    private static final String TAG = "BatchService";
+    private static final String CHANNEL_ID = "batch";
+    private static final int NOTIFICATION_ID = 1;
+
+    public static final String EXTRA_INPUT_DIR = "input_dir";
+    public static final String EXTRA_URIS = "uris";
+    public static final String EXTRA_OUTPUT = "output";
+    public static final String EXTRA_TEXT = "text";
+    public static final String EXTRA_FACES = "faces";
+    public static final String EXTRA_PARALLELISM = "parallelism";
+    public static final String EXTRA_MAX_IMAGE_SIZE = "max_image_size";
+
+    private static final int DEFAULT_PARALLELISM = 2;
+    private static final int DEFAULT_MAX_IMAGE_SIZE = 2048;
+    private static final FaceDetectorOptions FACE_OPTIONS =
+            new FaceDetectorOptions.Builder()
+                    .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                    .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                    .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
+                    .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
+                    .build();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, TAG));
+    private final DetectorRegistry registry = new DetectorRegistry();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.batch_channel_name), NotificationManager.IMPORTANCE_LOW);
+        getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Notification notification = new Notification.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.batch_notification_title))
+                .build();
+        startForeground(NOTIFICATION_ID, notification);
+
+        executor.execute(() -> {
+            try {
+                runBatch(intent);
+            } finally {
+                // Stops the service after the last batch only.
+                stopSelf(startId);
+            }
+        });
+        return START_NOT_STICKY;
+    }
+
+    private void runBatch(Intent intent) {
+        Iterator<BatchProcessor.Item> items;
+        String inputDir = intent.getStringExtra(EXTRA_INPUT_DIR);
+        List<String> uris = intent.getStringArrayListExtra(EXTRA_URIS);
+        if (inputDir != null) {
+            items = BatchProcessor.walk(new File(inputDir));
+        } else if (uris != null) {
+            items = BatchProcessor.fromUris(getContentResolver(), uris).iterator();
+        } else {
+            Log.e(TAG, "Expected " + EXTRA_INPUT_DIR + " or " + EXTRA_URIS);
+            return;
+        }
+
+        TextRecognizer textRecognizer = intent.getBooleanExtra(EXTRA_TEXT, true)
+                ? registry.getTextRecognizer(TextRecognizerOptions.DEFAULT_OPTIONS) : null;
+        FaceDetector faceDetector = intent.getBooleanExtra(EXTRA_FACES, true)
+                ? registry.getFaceDetector(FACE_OPTIONS) : null;
+        BatchProcessor processor;
+        try {
+            processor = new BatchProcessor(textRecognizer, faceDetector,
+                    intent.getIntExtra(EXTRA_PARALLELISM, DEFAULT_PARALLELISM),
+                    intent.getIntExtra(EXTRA_MAX_IMAGE_SIZE, DEFAULT_MAX_IMAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid batch", e);
+            return;
+        }
+
+        String output = intent.getStringExtra(EXTRA_OUTPUT);
+        File file = output != null ? new File(output) : new File(getExternalFilesDir(null),
+                "batch-" + System.currentTimeMillis() + ".jsonl");
+        Log.i(TAG, "Writing results to " + file);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            BatchProcessor.Summary summary = processor.run(items, out);
+            Log.i(TAG, "Finished " + file + ": " + summary);
+        } catch (IOException e) {
+            Log.e(TAG, "Batch failed", e);
+        } catch (InterruptedException e) {
+            Log.i(TAG, "Batch stopped");
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdownNow();
+        registry.close();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes images at a reduced resolution sized for a target view.
+ * <p>
+ * <p>The bounds of the source are read first, then the pixels are decoded with the largest
+ * power-of-two {@link BitmapFactory.Options#inSampleSize} that still produces an image at least as
+ * large as the one {@link MainActivity#resizeBitmap} will scale it to. This way a full resolution
+ * bitmap is never allocated only to be thrown away after resizing.
+ */
+public final class BitmapDecoder {
+    private static final String TAG = "BitmapDecoder";
+    /**
+     * Bytes used by one ARGB_8888 pixel, the config used by every decode in this app.
+     */
+    static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Opens a new stream over the encoded image. Decoding reads the source twice (bounds, then
+     * pixels), so the opener is called once per pass.
+     */
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decodes the whole image, sampled down so it is not much larger than the targeted size.
+     *
+     * @return the decoded bitmap, or null if the source could not be read or decoded
+     */
+    public static Bitmap decodeSampled(StreamOpener opener, int targetWidth, int targetHeight) {
+        return decodeSampled(opener, targetWidth, targetHeight, null);
+    }
+
+    /**
+     * Decodes the whole image, sampled down so it is not much larger than the targeted size. When a
+     * pool is given the pixels are decoded into a pooled bitmap if one is large enough.
+     *
+     * @return the decoded bitmap, or null if the source could not be read or decoded
+     */
+    public static Bitmap decodeSampled(StreamOpener opener, int targetWidth, int targetHeight,
+                                       BitmapPool pool) {
+        BitmapFactory.Options options = readBounds(opener);
+        if (options == null) {
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        if (pool != null) {
+            options.inBitmap = pool.get(
+                    sampledDimension(options.outWidth, options.inSampleSize),
+                    sampledDimension(options.outHeight, options.inSampleSize),
+                    Bitmap.Config.ARGB_8888);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = decode(opener, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            // The decoder could not reuse the pooled bitmap, decode into a new one instead.
+            Log.w(TAG, "Unable to reuse bitmap, decoding without it", e);
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = decode(opener, options);
+        }
+        if (bitmap != null && bitmap != options.inBitmap) {
+            StageMetrics.add(StageMetrics.Counter.BITMAP_BYTES_ALLOCATED,
+                    bitmap.getAllocationByteCount());
+        }
+        return bitmap;
+    }
+
+    private static Bitmap decode(StreamOpener opener, BitmapFactory.Options options) {
+        try (InputStream is = opener.open()) {
+            return BitmapFactory.decodeStream(is, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to decode image", e);
+            return null;
+        }
+    }
+
+    private static BitmapFactory.Options readBounds(StreamOpener opener) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream is = opener.open()) {
+            BitmapFactory.decodeStream(is, null, options);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read image bounds", e);
+            return null;
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Unable to read image bounds, unsupported format");
+            return null;
+        }
+        return options;
+    }
+
+    /**
+     * Returns the largest power of two that keeps the sampled image at least as large as the image
+     * {@link MainActivity#resizeBitmap} produces for the same target, i.e. not larger than the
+     * resize scale factor. A target that is not known yet (zero or negative) disables sampling.
+     */
+    static int calculateInSampleSize(int srcWidth, int srcHeight, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        float scaleFactor = Math.max(
+                (float) srcWidth / (float) targetWidth,
+                (float) srcHeight / (float) targetHeight);
+
+        int sampleSize = 1;
+        while (sampleSize * 2 <= scaleFactor) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the size in bytes of the bitmap produced by decoding a source with the given sample
+     * size. The decoder rounds the sampled dimensions up.
+     */
+    static long estimateDecodedBytes(int srcWidth, int srcHeight, int sampleSize) {
+        long width = sampledDimension(srcWidth, sampleSize);
+        long height = sampledDimension(srcHeight, sampleSize);
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    private static int sampledDimension(int srcDimension, int sampleSize) {
+        return (srcDimension + sampleSize - 1) / sampleSize;
+    }
+
+    /**
+     * Returns the size in bytes of the bitmap {@link MainActivity#resizeBitmap} produces for a
+     * source of the given dimensions.
+     */
+    static long estimateResizedBytes(int srcWidth, int srcHeight, int targetWidth, int targetHeight) {
+        float scaleFactor = Math.max(
+                (float) srcWidth / (float) targetWidth,
+                (float) srcHeight / (float) targetHeight);
+        long width = (int) (srcWidth / scaleFactor);
+        long height = (int) (srcHeight / scaleFactor);
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Returns the peak number of bitmap bytes alive while decoding and resizing a source: the
+     * decoded bitmap and the resized copy exist at the same time.
+     */
+    static long estimatePeakBytes(int srcWidth, int srcHeight, int targetWidth, int targetHeight,
+                                  int sampleSize) {
+        return estimateDecodedBytes(srcWidth, srcHeight, sampleSize)
+                + estimateResizedBytes(srcWidth, srcHeight, targetWidth, targetHeight);
+    }
+}
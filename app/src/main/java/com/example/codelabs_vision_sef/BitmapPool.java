@@ -0,0 +1,169 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of mutable bitmaps that can be reused as {@link android.graphics.BitmapFactory.Options#inBitmap}
+ * decode targets and as resize outputs.
+ * <p>
+ * <p>Bitmaps are bucketed by allocation size, so a request is served by the smallest pooled bitmap
+ * that is large enough, reconfigured to the requested dimensions. The total size of the pool is
+ * bounded by a byte budget; when it is exceeded the least recently pooled bitmaps are recycled.
+ * <p>
+ * <p>All methods are thread safe.
+ */
+public class BitmapPool {
+    /**
+     * A pooled bitmap is only handed out if it is at most this many times larger than requested,
+     * otherwise a small request would pin a large allocation.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final long maxBytes;
+    private long currentBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    // Iteration order is the order bitmaps were pooled in, least recent first.
+    private final LinkedHashSet<Bitmap> lru = new LinkedHashSet<>();
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a pooled bitmap reconfigured to the given size and config, with undefined contents, or
+     * null if no pooled bitmap is large enough.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int needed = width * height * bytesPerPixel(config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(needed);
+        if (entry == null || entry.getKey() > (long) needed * MAX_SIZE_MULTIPLE) {
+            missCount++;
+            return null;
+        }
+
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+        lru.remove(bitmap);
+        currentBytes -= bitmap.getAllocationByteCount();
+        hitCount++;
+
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    /**
+     * Returns a cleared bitmap of the given size and config, taken from the pool when possible and
+     * allocated otherwise.
+     */
+    public Bitmap getOrCreate(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+            StageMetrics.add(StageMetrics.Counter.BITMAP_BYTES_ALLOCATED,
+                    bitmap.getAllocationByteCount());
+            return bitmap;
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Hands a bitmap back to the pool. The caller must not use it afterwards. Bitmaps that can not be
+     * reused are recycled right away.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || lru.contains(bitmap)) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        lru.add(bitmap);
+        currentBytes += size;
+
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Recycles every pooled bitmap.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long size) {
+        Iterator<Bitmap> iterator = lru.iterator();
+        while (currentBytes > size && iterator.hasNext()) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+
+            int byteCount = eldest.getAllocationByteCount();
+            ArrayDeque<Bitmap> bucket = buckets.get(byteCount);
+            bucket.remove(eldest);
+            if (bucket.isEmpty()) {
+                buckets.remove(byteCount);
+            }
+            currentBytes -= byteCount;
+            evictionCount++;
+            eldest.recycle();
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{hits=" + hitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + ", bytes=" + currentBytes + "/" + maxBytes + "}";
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        }
+        return BitmapDecoder.BYTES_PER_PIXEL;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.codelabs_vision_sef;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of direct byte buffers, so images converted for the detectors do not allocate native
+ * memory per call.
+ * <p>
+ * <p>A request is served by the smallest pooled buffer that is large enough, but not much larger.
+ * The pool keeps a fixed number of buffers; when it is full the smallest one is dropped.
+ * <p>
+ * <p>All methods are thread safe.
+ */
+public class ByteBufferPool {
+    /**
+     * A pooled buffer is only handed out if it is at most this many times larger than requested,
+     * the same rule {@link BitmapPool} uses.
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final int maxBuffers;
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxBuffers number of released buffers kept for reuse
+     */
+    public ByteBufferPool(int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Returns a direct buffer with position 0 and limit {@code size}, taken from the pool when
+     * possible and allocated otherwise. Its contents are undefined.
+     */
+    public synchronized ByteBuffer acquire(int size) {
+        ByteBuffer best = null;
+        for (ByteBuffer buffer : buffers) {
+            int capacity = buffer.capacity();
+            if (capacity >= size && capacity <= (long) size * MAX_SIZE_MULTIPLE
+                    && (best == null || capacity < best.capacity())) {
+                best = buffer;
+            }
+        }
+        if (best == null) {
+            missCount++;
+            best = ByteBuffer.allocateDirect(size);
+        } else {
+            hitCount++;
+            buffers.remove(best);
+        }
+        best.clear();
+        best.limit(size);
+        return best;
+    }
+
+    /**
+     * Hands a buffer back to the pool. The caller must not use it afterwards.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        buffers.add(buffer);
+        if (buffers.size() > maxBuffers) {
+            ByteBuffer smallest = buffers.get(0);
+            for (ByteBuffer pooled : buffers) {
+                if (pooled.capacity() < smallest.capacity()) {
+                    smallest = pooled;
+                }
+            }
+            buffers.remove(smallest);
+        }
+    }
+
+    /**
+     * Drops every pooled buffer.
+     */
+    public synchronized void clear() {
+        buffers.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ByteBufferPool{hits=" + hitCount + ", misses=" + missCount
+                + ", pooled=" + buffers.size() + "}";
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.codelabs_vision_sef;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Recognizes text and detects faces in one converted image at the same time, and hands over both
+ * results together, so they can be shown in a single overlay update.
+ * <p>
+ * <p>Each detector reads the shared {@link Nv21Image} through its own input, so an analysis takes
+ * about as long as the slower detector rather than both in turn. How long each detector took and
+ * the whole analysis took is reported with the results.
+ */
+public class CombinedAnalyzer {
+    private static final String TAG = "CombinedAnalyzer";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * The results of one analysis and its latencies.
+     */
+    public static final class Result {
+        /**
+         * The recognized text, or null if recognition failed.
+         */
+        public final RecognizedText text;
+        /**
+         * The detected faces, or null if detection failed.
+         */
+        public final List<FaceData> faces;
+        /**
+         * Nanoseconds from the start of the analysis until each detector completed, 0 for a
+         * result that was known beforehand.
+         */
+        public final long textNanos;
+        public final long faceNanos;
+        /**
+         * Nanoseconds from the start of the analysis until both results were processed.
+         */
+        public final long totalNanos;
+
+        Result(RecognizedText text, List<FaceData> faces, long textNanos, long faceNanos,
+               long totalNanos) {
+            this.text = text;
+            this.faces = faces;
+            this.textNanos = textNanos;
+            this.faceNanos = faceNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "text %.0f ms, faces %.0f ms, total %.0f ms",
+                    textNanos / NANOS_PER_MILLI, faceNanos / NANOS_PER_MILLI,
+                    totalNanos / NANOS_PER_MILLI);
+        }
+    }
+
+    /**
+     * Receives the results on the main thread.
+     */
+    public interface Callback {
+        void onAnalyzed(Result result);
+    }
+
+    private final TextRecognizer textRecognizer;
+    private final FaceDetector faceDetector;
+
+    public CombinedAnalyzer(TextRecognizer textRecognizer, FaceDetector faceDetector) {
+        this.textRecognizer = textRecognizer;
+        this.faceDetector = faceDetector;
+    }
+
+    /**
+     * Runs the detectors whose results are not known yet on the input, at the same time. Must be
+     * called on the main thread.
+     *
+     * @param input      the converted image, released once the detectors completed
+     * @param knownText  text recognized before, for example a cached result, or null to recognize
+     *                   it
+     * @param knownFaces faces detected before, or null to detect them
+     */
+    public void analyze(Nv21Image input, RecognizedText knownText, List<FaceData> knownFaces,
+                        Callback callback) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        // Completion time of each detector, written by its listener on the main thread. The
+        // listeners were added first, so they run before the one of the combined task.
+        long[] textEnd = {start};
+        long[] faceEnd = {start};
+        List<Task<?>> tasks = new ArrayList<>(2);
+
+        Task<Text> textTask = null;
+        if (knownText == null) {
+            long recognition = StageMetrics.beginAsync(StageMetrics.Stage.TEXT_RECOGNITION);
+            textTask = textRecognizer.process(input.newInputImage()).addOnCompleteListener(task -> {
+                StageMetrics.endAsync(StageMetrics.Stage.TEXT_RECOGNITION, recognition);
+                textEnd[0] = SystemClock.elapsedRealtimeNanos();
+            });
+            tasks.add(textTask);
+        }
+        Task<List<Face>> faceTask = null;
+        if (knownFaces == null) {
+            long detection = StageMetrics.beginAsync(StageMetrics.Stage.FACE_DETECTION);
+            faceTask = faceDetector.process(input.newInputImage()).addOnCompleteListener(task -> {
+                StageMetrics.endAsync(StageMetrics.Stage.FACE_DETECTION, detection);
+                faceEnd[0] = SystemClock.elapsedRealtimeNanos();
+            });
+            tasks.add(faceTask);
+        }
+
+        Task<Text> finalTextTask = textTask;
+        Task<List<Face>> finalFaceTask = faceTask;
+        Tasks.whenAllComplete(tasks).addOnCompleteListener(all -> {
+            input.release();
+            RecognizedText text = knownText;
+            if (finalTextTask != null) {
+                text = null;
+                if (finalTextTask.isSuccessful()) {
+                    long processing = StageMetrics.begin(StageMetrics.Stage.TEXT_RESULT);
+                    text = RecognizedText.fromText(finalTextTask.getResult());
+                    StageMetrics.end(StageMetrics.Stage.TEXT_RESULT, processing);
+                } else {
+                    Log.e(TAG, "Text recognition failed", finalTextTask.getException());
+                }
+            }
+            List<FaceData> faces = knownFaces;
+            if (finalFaceTask != null) {
+                faces = null;
+                if (finalFaceTask.isSuccessful()) {
+                    long processing = StageMetrics.begin(StageMetrics.Stage.FACE_RESULT);
+                    faces = FaceData.fromFaces(finalFaceTask.getResult());
+                    StageMetrics.end(StageMetrics.Stage.FACE_RESULT, processing);
+                } else {
+                    Log.e(TAG, "Face detection failed", finalFaceTask.getException());
+                }
+            }
+            callback.onAnalyzed(new Result(text, faces, textEnd[0] - start, faceEnd[0] - start,
+                    SystemClock.elapsedRealtimeNanos() - start));
+        });
+    }
+}
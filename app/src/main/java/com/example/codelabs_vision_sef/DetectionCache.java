@@ -0,0 +1,338 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches detection results by image content, so analyzing an image that was analyzed before, even
+ * in an earlier run of the app, does not run the detector again.
+ * <p>
+ * <p>Results are keyed by a hash of the pixels and the name of the detector, which callers keep
+ * stable across runs and distinct for each configuration, such as
+ * {@link FaceDetectorSettings#getName()}, so changing the options never serves results of the old
+ * ones. Recent results are kept in memory; all of them are written to a directory, in the compact
+ * form of {@link RecognizedText} and {@link FaceData}, which is trimmed to a size cap by dropping
+ * the least recently used files. Hashing and file access run on a background thread.
+ */
+public class DetectionCache implements LifecycleEventObserver {
+    private static final String TAG = "DetectionCache";
+    // Written first in every file. Bumped whenever the format changes, so old files are not read.
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_SUFFIX = ".bin";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Identifies the result of one detector for one image.
+     */
+    public static final class Key {
+        final long imageHash;
+        final String detector;
+
+        Key(long imageHash, String detector) {
+            this.imageHash = imageHash;
+            this.detector = detector;
+        }
+
+        String getFileName() {
+            return String.format(Locale.US, "%016x-%s%s", imageHash, detector, FILE_SUFFIX);
+        }
+    }
+
+    /**
+     * Receives the result of a lookup on the main thread.
+     */
+    public interface Callback<T> {
+        /**
+         * @param key    key to store the result under after a miss
+         * @param cached the cached result, or null on a miss
+         */
+        void onResult(Key key, T cached);
+    }
+
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final File directory;
+    private final long maxDiskBytes;
+    private final LruCache<String, Object> memory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG));
+
+    // Used on the executor thread only. The hash of the last hashed bitmap holds as long as its
+    // generation id does not change.
+    private Bitmap hashedBitmap;
+    private int hashedGenerationId;
+    private long hashedValue;
+    // Bytes in the directory, or -1 until it was scanned.
+    private long diskBytes = -1;
+
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates a cache that finishes its pending writes and stops when the given owner is destroyed.
+     *
+     * @param directory     directory the results are stored in, created when needed
+     * @param memoryEntries number of results kept in memory
+     * @param maxDiskBytes  size the directory is trimmed to
+     */
+    public DetectionCache(LifecycleOwner owner, File directory, int memoryEntries,
+                          long maxDiskBytes) {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LruCache<>(memoryEntries);
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Looks up the text recognized in the image by the named detector. The image must not change
+     * until the callback ran.
+     */
+    public void findText(Bitmap image, String detector, Callback<RecognizedText> callback) {
+        find(image, detector, RecognizedText::readFrom, callback);
+    }
+
+    /**
+     * Looks up the faces detected in the image by the named detector. The image must not change
+     * until the callback ran.
+     */
+    public void findFaces(Bitmap image, String detector, Callback<List<FaceData>> callback) {
+        find(image, detector, FaceData::readListFrom, callback);
+    }
+
+    public void putText(Key key, RecognizedText text) {
+        put(key, text, text::writeTo);
+    }
+
+    public void putFaces(Key key, List<FaceData> faces) {
+        put(key, faces, out -> FaceData.writeListTo(faces, out));
+    }
+
+    private <T> void find(Bitmap image, String detector, Reader<T> reader, Callback<T> callback) {
+        if (executor.isShutdown()) {
+            // The owner is gone, and with it whoever would render the result.
+            return;
+        }
+        executor.execute(() -> {
+            Key key = new Key(hash(image), detector);
+            @SuppressWarnings("unchecked")
+            T cached = (T) memory.get(key.getFileName());
+            if (cached != null) {
+                memoryHitCount.incrementAndGet();
+            } else {
+                cached = readFile(key, reader);
+                if (cached != null) {
+                    diskHitCount.incrementAndGet();
+                    memory.put(key.getFileName(), cached);
+                } else {
+                    missCount.incrementAndGet();
+                }
+            }
+            T result = cached;
+            mainHandler.post(() -> callback.onResult(key, result));
+        });
+    }
+
+    private void put(Key key, Object value, Writer writer) {
+        memory.put(key.getFileName(), value);
+        if (!executor.isShutdown()) {
+            executor.execute(() -> writeFile(key, writer));
+        }
+    }
+
+    private long hash(Bitmap image) {
+        if (image != hashedBitmap || image.getGenerationId() != hashedGenerationId) {
+            hashedBitmap = image;
+            hashedGenerationId = image.getGenerationId();
+            hashedValue = hashPixels(image);
+        }
+        return hashedValue;
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the size and the pixels of the bitmap.
+     */
+    static long hashPixels(Bitmap image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long hash = mix(mix(FNV_OFFSET_BASIS, width), height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getPixels(row, 0, width, 0, y, width, 1);
+            hash = mix(hash, row, width);
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the first values of the array to an FNV-1a hash, one whole value at a time.
+     */
+    static long mix(long hash, int[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            hash = (hash ^ (values[i] & 0xffffffffL)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ (value & 0xffffffffL)) * FNV_PRIME;
+    }
+
+    private <T> T readFile(Key key, Reader<T> reader) {
+        File file = new File(directory, key.getFileName());
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown format");
+            }
+            T value = reader.read(in);
+            // The modification time orders the files for trimming.
+            file.setLastModified(System.currentTimeMillis());
+            return value;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable " + file.getName(), e);
+            deleteFile(file);
+            return null;
+        }
+    }
+
+    private void writeFile(Key key, Writer writer) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + directory);
+            return;
+        }
+        scanDirectory();
+        File file = new File(directory, key.getFileName());
+        File temporary = new File(directory, key.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(FORMAT_VERSION);
+            writer.write(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + file.getName(), e);
+            temporary.delete();
+            return;
+        }
+        // Readers only ever see complete files.
+        deleteFile(file);
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            return;
+        }
+        diskBytes += file.length();
+        trim();
+    }
+
+    private void scanDirectory() {
+        if (diskBytes >= 0) {
+            return;
+        }
+        diskBytes = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                diskBytes += file.length();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the directory fits the size cap.
+     */
+    private void trim() {
+        if (diskBytes <= maxDiskBytes) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length && diskBytes > maxDiskBytes; i++) {
+            deleteFile(files[i]);
+        }
+    }
+
+    private void deleteFile(File file) {
+        long length = file.length();
+        if (file.delete() && diskBytes >= 0) {
+            diskBytes -= length;
+        }
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHitCount.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the share of lookups served from memory or disk, or 0 before the first lookup.
+     */
+    public float getHitRate() {
+        long hits = getMemoryHitCount() + getDiskHitCount();
+        long lookups = hits + getMissCount();
+        return lookups == 0 ? 0 : (float) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "DetectionCache{memoryHits=%d, diskHits=%d, misses=%d, hitRate=%.2f}",
+                getMemoryHitCount(), getDiskHitCount(), getMissCount(), getHitRate());
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            // Pending writes still finish.
+            executor.shutdown();
+            Log.d(TAG, toString());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.codelabs_vision_sef;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the next frame may be submitted to the detectors, based on how long detections
+ * actually take.
+ * <p>
+ * <p>At most a fixed number of detections are in flight. Between submissions the scheduler waits
+ * for the average detector latency divided by that number, which is the rate the detector can
+ * sustain, so frames are not queued up inside the detector where they only add latency. When the
+ * 90th percentile latency exceeds the budget, the scheduler reports itself as degraded so callers
+ * can switch to cheaper detection. It recovers once a full window of samples stays well below the
+ * budget; the gap between both thresholds keeps it from flipping on every frame.
+ */
+public class DetectionScheduler {
+    // Number of latest samples percentiles are computed over.
+    static final int WINDOW = 32;
+    // Samples needed before a 90th percentile above the budget counts.
+    static final int MIN_DEGRADE_SAMPLES = 8;
+    // Weight of a new sample in the moving average.
+    private static final float AVERAGE_WEIGHT = 0.2f;
+    // Degraded mode ends when the 90th percentile falls below this share of the budget.
+    private static final float RECOVER_FRACTION = 0.5f;
+    private static final int DEGRADE_PERCENTILE = 90;
+
+    private final int maxInFlight;
+    private final long latencyBudgetNanos;
+
+    // Ring buffer of the latest latencies, and a scratch copy to sort for percentiles.
+    private final long[] samples = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int sampleCount;
+    private long averageNanos;
+    private long completedCount;
+
+    private int inFlight;
+    private long nextSubmitNanos;
+    private boolean degraded;
+
+    /**
+     * @param maxInFlight        detections allowed to run at the same time
+     * @param latencyBudgetNanos latency above which detection should degrade
+     */
+    public DetectionScheduler(int maxInFlight, long latencyBudgetNanos) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one detection must be allowed in flight");
+        }
+        this.maxInFlight = maxInFlight;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+    }
+
+    /**
+     * Starts a detection if one may be submitted at the given time.
+     *
+     * @param nowNanos {@link System#nanoTime()} or any other monotonic clock used consistently
+     * @return whether the detection was started; it must then be ended by
+     * {@link #onComplete(long)} or {@link #onFailed()}
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        if (inFlight >= maxInFlight || nowNanos < nextSubmitNanos) {
+            return false;
+        }
+        inFlight++;
+        nextSubmitNanos = nowNanos + getSubmitIntervalNanos();
+        return true;
+    }
+
+    /**
+     * Waits until a detection may be submitted and starts it.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            if (tryAcquire(now)) {
+                return;
+            }
+            if (inFlight >= maxInFlight) {
+                wait();
+            } else {
+                long waitNanos = nextSubmitNanos - now;
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Ends a detection that took the given time.
+     */
+    public synchronized void onComplete(long latencyNanos) {
+        release();
+        completedCount++;
+        averageNanos = completedCount == 1 ? latencyNanos
+                : (long) (averageNanos + AVERAGE_WEIGHT * (latencyNanos - averageNanos));
+        samples[sampleCount % WINDOW] = latencyNanos;
+        sampleCount++;
+        updateDegraded();
+    }
+
+    /**
+     * Ends a detection that failed. Failures are not timed.
+     */
+    public synchronized void onFailed() {
+        release();
+    }
+
+    /**
+     * Returns the time to wait between two submissions.
+     */
+    public synchronized long getSubmitIntervalNanos() {
+        return averageNanos / maxInFlight;
+    }
+
+    /**
+     * Returns the moving average of the latency.
+     */
+    public synchronized long getAverageLatencyNanos() {
+        return averageNanos;
+    }
+
+    /**
+     * Returns the given percentile of the latest latencies, or 0 before the first sample.
+     */
+    public synchronized long getLatencyPercentileNanos(int percentile) {
+        int count = Math.min(sampleCount, WINDOW);
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        // Nearest rank.
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns whether detection is behind its budget and should use cheaper options.
+     */
+    public synchronized boolean isDegraded() {
+        return degraded;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    private void release() {
+        if (inFlight == 0) {
+            throw new IllegalStateException("No detection in flight");
+        }
+        inFlight--;
+        notifyAll();
+    }
+
+    private void updateDegraded() {
+        long percentile = getLatencyPercentileNanos(DEGRADE_PERCENTILE);
+        boolean switchMode;
+        if (degraded) {
+            // Only a full window of the cheaper detection tells whether the budget is safe again.
+            switchMode = sampleCount >= WINDOW
+                    && percentile < latencyBudgetNanos * RECOVER_FRACTION;
+        } else {
+            switchMode = sampleCount >= MIN_DEGRADE_SAMPLES && percentile > latencyBudgetNanos;
+        }
+        if (switchMode) {
+            degraded = !degraded;
+            // Samples of the other mode say nothing about this one. The average is kept, so the
+            // submit rate adapts smoothly.
+            sampleCount = 0;
+        }
+    }
+}
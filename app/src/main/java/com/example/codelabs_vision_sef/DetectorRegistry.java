@@ -0,0 +1,129 @@
+package com.example.codelabs_vision_sef;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Owns the ML Kit detector clients of a screen. One client is created per options set and shared
+ * by every later request with the same options, so the model is only set up once. All clients are
+ * closed when the lifecycle the registry observes is destroyed.
+ */
+public class DetectorRegistry implements LifecycleEventObserver {
+    private static final String TAG = "DetectorRegistry";
+
+    private final Map<Object, Closeable> clients = new HashMap<>();
+    private int createdCount;
+    private int reusedCount;
+    private boolean closed;
+
+    /**
+     * Creates a registry that closes its clients when the given owner is destroyed.
+     */
+    public DetectorRegistry(LifecycleOwner owner) {
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Creates a registry for components without a lifecycle, which must call {@link #close()}.
+     */
+    public DetectorRegistry() {
+    }
+
+    /**
+     * Returns the shared text recognizer for the given options.
+     */
+    public synchronized TextRecognizer getTextRecognizer(TextRecognizerOptions options) {
+        TextRecognizer recognizer = (TextRecognizer) clients.get(options);
+        if (recognizer == null) {
+            checkNotClosed();
+            recognizer = TextRecognition.getClient(options);
+            clients.put(options, recognizer);
+            createdCount++;
+        } else {
+            reusedCount++;
+        }
+        return recognizer;
+    }
+
+    /**
+     * Returns the shared face detector for the given options.
+     */
+    public synchronized FaceDetector getFaceDetector(FaceDetectorOptions options) {
+        FaceDetector detector = (FaceDetector) clients.get(options);
+        if (detector == null) {
+            checkNotClosed();
+            detector = FaceDetection.getClient(options);
+            clients.put(options, detector);
+            createdCount++;
+        } else {
+            reusedCount++;
+        }
+        return detector;
+    }
+
+    /**
+     * Closes every client. Requests made afterwards fail.
+     */
+    public synchronized void close() {
+        for (Closeable client : clients.values()) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to close detector", e);
+            }
+        }
+        clients.clear();
+        closed = true;
+        Log.d(TAG, toString());
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            close();
+        }
+    }
+
+    /**
+     * Returns how many clients were created.
+     */
+    public synchronized int getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Returns how many requests were served by an existing client.
+     */
+    public synchronized int getReusedCount() {
+        return reusedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DetectorRegistry{created=" + createdCount + ", reused=" + reusedCount
+                + ", open=" + clients.size() + "}";
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Detector registry is closed");
+        }
+    }
+}
@@ -3,16 +3,18 @@ package com.example.codelabs_vision_sef;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PointF;
+import android.graphics.RectF;
+import android.os.SystemClock;
 
 import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceContour;
-import com.google.mlkit.vision.face.FaceLandmark;
 
-import java.util.List;
 
-
-/** Graphic instance for rendering face contours graphic overlay view. */
+/**
+ * Graphic instance for rendering face contours graphic overlay view.
+ * <p>
+ * <p>A graphic can follow the same face across detections. Its box and points then move smoothly
+ * from one detection to the next, see {@link MotionInterpolator}.
+ */
 public class FaceContourGraphic extends GraphicOverlay.Graphic {
 
   private static final float FACE_POSITION_RADIUS = 10.0f;
@@ -20,17 +22,57 @@ public class FaceContourGraphic extends GraphicOverlay.Graphic {
   private static final float ID_Y_OFFSET = 80.0f;
   private static final float ID_X_OFFSET = -70.0f;
   private static final float BOX_STROKE_WIDTH = 5.0f;
+  // The bounding box comes first in the coordinates: left, top, right, bottom.
+  private static final int BOX_COORDINATES = 4;
 
   private static final int[] COLOR_CHOICES = {
           Color.BLUE, Color.CYAN, Color.GREEN, Color.MAGENTA, Color.RED, Color.WHITE, Color.YELLOW
   };
   private static int currentColorIndex = 0;
 
+  // Labels drawn next to the face, in the order of their segments in the label buffer.
+  private static final int LABEL_ID = 0;
+  private static final int LABEL_HAPPINESS = 1;
+  private static final int LABEL_RIGHT_EYE = 2;
+  private static final int LABEL_LEFT_EYE = 3;
+  private static final int LABEL_COUNT = 4;
+  private static final char[][] LABEL_PREFIXES = {
+          "id: ".toCharArray(),
+          "happiness: ".toCharArray(),
+          "right eye: ".toCharArray(),
+          "left eye: ".toCharArray()
+  };
+  private static final char[] NULL_CHARS = "null".toCharArray();
+  // Longest prefix, plus the longest formatted int ("-2147483648") or probability ("-21474836.47").
+  private static final int LABEL_CAPACITY = 11 + 12;
+
   private final Paint facePositionPaint;
+  private final Paint pointPaint;
   private final Paint idPaint;
   private final Paint boxPaint;
 
-  private volatile Face face;
+  private boolean hasFace;
+
+  // Label texts, each in its own segment of the buffer. An empty label is not drawn.
+  private final char[] labelChars = new char[LABEL_COUNT * LABEL_CAPACITY];
+  private final int[] labelLengths = new int[LABEL_COUNT];
+
+  // Bounding box followed by the contour and landmark points as x, y pairs, in image coordinates:
+  // as last detected, and as displayed at the current frame. Then the displayed points mapped to
+  // view coordinates, and the range each coordinate moves in. All arrays only grow, so updates with
+  // fewer points reuse them.
+  private float[] coordinates = new float[BOX_COORDINATES];
+  private float[] displayed = new float[BOX_COORDINATES];
+  private float[] viewPoints = new float[0];
+  private float[] minCoordinates = new float[BOX_COORDINATES];
+  private float[] maxCoordinates = new float[BOX_COORDINATES];
+  private int pointCoordinates;
+  private final MotionInterpolator motion = new MotionInterpolator();
+  // Whether the displayed coordinates stopped moving since the last update.
+  private boolean settled;
+  // Transform the view points were computed with, see mapToView(), or null if the displayed
+  // points moved since.
+  private GraphicOverlay.Transform mappedTransform;
 
   public FaceContourGraphic(GraphicOverlay overlay) {
     super(overlay);
@@ -41,6 +83,12 @@ public class FaceContourGraphic extends GraphicOverlay.Graphic {
     facePositionPaint = new Paint();
     facePositionPaint.setColor(selectedColor);
 
+    // Round points as wide as the position circles, so drawPoints renders the same dots.
+    pointPaint = new Paint();
+    pointPaint.setColor(selectedColor);
+    pointPaint.setStrokeWidth(FACE_POSITION_RADIUS * 2);
+    pointPaint.setStrokeCap(Paint.Cap.ROUND);
+
     idPaint = new Paint();
     idPaint.setColor(selectedColor);
     idPaint.setTextSize(ID_TEXT_SIZE);
@@ -54,100 +102,266 @@ public class FaceContourGraphic extends GraphicOverlay.Graphic {
   /**
    * Updates the face instance from the detection of the most recent frame. Invalidates the relevant
    * portions of the overlay to trigger a redraw.
+   * <p>
+   * <p>The contour and landmark points are flattened, see {@link FaceData}, and mapped to view
+   * coordinates here, once per detection, instead of on every draw. Only while the graphic moves
+   * towards the new detection are they mapped again each frame. Must be called on the thread that
+   * draws the overlay.
    */
   public void updateFace(Face face) {
-    this.face = face;
+    updateFace(FaceData.fromFace(face));
+  }
+
+  /**
+   * Same as {@link #updateFace(Face)}, for a face that was already flattened, for example one read
+   * from a cache.
+   */
+  public void updateFace(FaceData face) {
+    ensureCapacity(BOX_COORDINATES + face.points.length);
+    System.arraycopy(face.points, 0, coordinates, BOX_COORDINATES, face.points.length);
+    pointCoordinates = face.points.length;
+
+    updateFaceInfo(face.left, face.top, face.right, face.bottom, face.trackingId,
+            face.smilingProbability, face.rightEyeOpenProbability, face.leftEyeOpenProbability);
+  }
+
+  /**
+   * Updates the bounding box and the labels, and formats the label texts once so drawing does not
+   * have to. Missing probabilities are not drawn.
+   */
+  void updateFaceInfo(float left, float top, float right, float bottom, Integer trackingId,
+                      Float smilingProbability, Float rightEyeOpenProbability,
+                      Float leftEyeOpenProbability) {
+    updateFaceInfo(left, top, right, bottom, trackingId, smilingProbability,
+            rightEyeOpenProbability, leftEyeOpenProbability, SystemClock.elapsedRealtimeNanos());
+  }
+
+  /**
+   * Same as {@link #updateFaceInfo(float, float, float, float, Integer, Float, Float, Float)}, for
+   * a detection received at the given {@link SystemClock#elapsedRealtimeNanos()} time.
+   */
+  void updateFaceInfo(float left, float top, float right, float bottom, Integer trackingId,
+                      Float smilingProbability, Float rightEyeOpenProbability,
+                      Float leftEyeOpenProbability, long nowNanos) {
+    coordinates[0] = left;
+    coordinates[1] = top;
+    coordinates[2] = right;
+    coordinates[3] = bottom;
+    motion.update(coordinates, BOX_COORDINATES + pointCoordinates, nowNanos);
+    motion.sample(nowNanos, displayed);
+    settled = false;
+
+    int offset = startLabel(LABEL_ID);
+    if (trackingId != null) {
+      offset = appendInt(trackingId, labelChars, offset);
+    } else {
+      offset = append(NULL_CHARS, labelChars, offset);
+    }
+    endLabel(LABEL_ID, offset);
+    updateProbabilityLabel(LABEL_HAPPINESS, smilingProbability);
+    updateProbabilityLabel(LABEL_RIGHT_EYE, rightEyeOpenProbability);
+    updateProbabilityLabel(LABEL_LEFT_EYE, leftEyeOpenProbability);
+
+    hasFace = true;
+    mappedTransform = null;
+    mapToView(getTransform());
     postInvalidate();
   }
 
+  private void updateProbabilityLabel(int label, Float probability) {
+    if (probability == null) {
+      labelLengths[label] = 0;
+      return;
+    }
+    endLabel(label, appendFixedPoint(probability, labelChars, startLabel(label)));
+  }
+
+  /**
+   * Returns the bounding box as last detected, in image coordinates.
+   */
+  void getDetectedBox(RectF outBox) {
+    outBox.set(coordinates[0], coordinates[1], coordinates[2], coordinates[3]);
+  }
+
+  private void ensureCapacity(int count) {
+    if (coordinates.length < count) {
+      coordinates = new float[count];
+      displayed = new float[count];
+      viewPoints = new float[count - BOX_COORDINATES];
+      minCoordinates = new float[count];
+      maxCoordinates = new float[count];
+    }
+  }
+
+  private int startLabel(int label) {
+    return append(LABEL_PREFIXES[label], labelChars, label * LABEL_CAPACITY);
+  }
+
+  private void endLabel(int label, int end) {
+    labelLengths[label] = end - label * LABEL_CAPACITY;
+  }
+
   /** Draws the face annotations for position on the supplied canvas. */
   @Override
   public void draw(Canvas canvas) {
-    Face face = this.face;
-    if (face == null) {
+    if (!hasFace) {
       return;
     }
+    if (!settled) {
+      boolean moving = motion.sample(SystemClock.elapsedRealtimeNanos(), displayed);
+      settled = !moving;
+      mappedTransform = null;
+      if (moving) {
+        postInvalidateOnAnimation();
+      }
+    }
+    float boxLeft = displayed[0];
+    float boxTop = displayed[1];
+    float boxRight = displayed[2];
+    float boxBottom = displayed[3];
 
     // Draws a circle at the position of the detected face, with the face's track id below.
-    float x = translateX(face.getBoundingBox().centerX());
-    float y = translateY(face.getBoundingBox().centerY());
+    GraphicOverlay.Transform transform = getTransform();
+    float x = transform.mapX((boxLeft + boxRight) / 2.0f);
+    float y = transform.mapY((boxTop + boxBottom) / 2.0f);
     canvas.drawCircle(x, y, FACE_POSITION_RADIUS, facePositionPaint);
-    canvas.drawText("id: " + face.getTrackingId(), x + ID_X_OFFSET, y + ID_Y_OFFSET, idPaint);
+    drawLabel(canvas, LABEL_ID, x + ID_X_OFFSET, y + ID_Y_OFFSET);
 
     // Draws a bounding box around the face.
-    float xOffset = scaleX(face.getBoundingBox().width() / 2.0f);
-    float yOffset = scaleY(face.getBoundingBox().height() / 2.0f);
+    float xOffset = transform.scaleX((boxRight - boxLeft) / 2.0f);
+    float yOffset = transform.scaleY((boxBottom - boxTop) / 2.0f);
     float left = x - xOffset;
     float top = y - yOffset;
     float right = x + xOffset;
     float bottom = y + yOffset;
     canvas.drawRect(left, top, right, bottom, boxPaint);
 
-    List<FaceContour> contour = face.getAllContours();
-    for (FaceContour faceContour : contour) {
-      for (PointF point : faceContour.getPoints()) {
-        float px = translateX(point.x);
-        float py = translateY(point.y);
-        canvas.drawCircle(px, py, FACE_POSITION_RADIUS, facePositionPaint);
-      }
-    }
+    // Draws all contour and landmark points at once.
+    mapToView(transform);
+    canvas.drawPoints(viewPoints, 0, pointCoordinates, pointPaint);
 
-    if (face.getSmilingProbability() != null) {
-      canvas.drawText(
-              "happiness: " + String.format("%.2f", face.getSmilingProbability()),
-              x + ID_X_OFFSET * 3,
-              y - ID_Y_OFFSET,
-              idPaint);
+    drawLabel(canvas, LABEL_HAPPINESS, x + ID_X_OFFSET * 3, y - ID_Y_OFFSET);
+    drawLabel(canvas, LABEL_RIGHT_EYE, x - ID_X_OFFSET, y);
+    drawLabel(canvas, LABEL_LEFT_EYE, x + ID_X_OFFSET * 6, y);
+  }
+
+  /**
+   * Returns the union of the position circle, the box, the points and the labels in view
+   * coordinates, over every position they move through until the next update.
+   */
+  @Override
+  public boolean getBounds(RectF outBounds) {
+    outBounds.setEmpty();
+    if (!hasFace) {
+      return true;
     }
 
-    if (face.getRightEyeOpenProbability() != null) {
-      canvas.drawText(
-              "right eye: " + String.format("%.2f", face.getRightEyeOpenProbability()),
-              x - ID_X_OFFSET,
-              y,
-              idPaint);
+    motion.getExtremes(minCoordinates, maxCoordinates);
+    GraphicOverlay.Transform transform = getTransform();
+    // The box spans from its leftmost left to its rightmost right, the same vertically.
+    float left = transform.mapX(minCoordinates[0]);
+    float right = transform.mapX(maxCoordinates[2]);
+    float top = transform.mapY(minCoordinates[1]);
+    float bottom = transform.mapY(maxCoordinates[3]);
+    float halfStroke = BOX_STROKE_WIDTH / 2;
+    outBounds.union(Math.min(left, right) - halfStroke, top - halfStroke,
+            Math.max(left, right) + halfStroke, bottom + halfStroke);
+
+    for (int i = BOX_COORDINATES; i < BOX_COORDINATES + pointCoordinates; i += 2) {
+      float x0 = transform.mapX(minCoordinates[i]);
+      float x1 = transform.mapX(maxCoordinates[i]);
+      outBounds.union(Math.min(x0, x1) - FACE_POSITION_RADIUS,
+              transform.mapY(minCoordinates[i + 1]) - FACE_POSITION_RADIUS,
+              Math.max(x0, x1) + FACE_POSITION_RADIUS,
+              transform.mapY(maxCoordinates[i + 1]) + FACE_POSITION_RADIUS);
     }
-    if (face.getLeftEyeOpenProbability() != null) {
-      canvas.drawText(
-              "left eye: " + String.format("%.2f", face.getLeftEyeOpenProbability()),
-              x + ID_X_OFFSET * 6,
-              y,
-              idPaint);
+
+    // The labels hang off the center, so their extremes are at the extremes of the center.
+    Paint.FontMetrics fontMetrics = new Paint.FontMetrics();
+    idPaint.getFontMetrics(fontMetrics);
+    unionCenter(outBounds, fontMetrics,
+            transform.mapX((minCoordinates[0] + minCoordinates[2]) / 2.0f),
+            transform.mapY((minCoordinates[1] + minCoordinates[3]) / 2.0f));
+    unionCenter(outBounds, fontMetrics,
+            transform.mapX((maxCoordinates[0] + maxCoordinates[2]) / 2.0f),
+            transform.mapY((maxCoordinates[1] + maxCoordinates[3]) / 2.0f));
+    return true;
+  }
+
+  private void unionCenter(RectF outBounds, Paint.FontMetrics fontMetrics, float x, float y) {
+    outBounds.union(x - FACE_POSITION_RADIUS, y - FACE_POSITION_RADIUS,
+            x + FACE_POSITION_RADIUS, y + FACE_POSITION_RADIUS);
+    unionLabel(outBounds, fontMetrics, LABEL_ID, x + ID_X_OFFSET, y + ID_Y_OFFSET);
+    unionLabel(outBounds, fontMetrics, LABEL_HAPPINESS, x + ID_X_OFFSET * 3, y - ID_Y_OFFSET);
+    unionLabel(outBounds, fontMetrics, LABEL_RIGHT_EYE, x - ID_X_OFFSET, y);
+    unionLabel(outBounds, fontMetrics, LABEL_LEFT_EYE, x + ID_X_OFFSET * 6, y);
+  }
+
+  private void unionLabel(RectF outBounds, Paint.FontMetrics fontMetrics, int label, float x,
+                          float y) {
+    if (labelLengths[label] > 0) {
+      float width = idPaint.measureText(labelChars, label * LABEL_CAPACITY, labelLengths[label]);
+      outBounds.union(x, y + fontMetrics.top, x + width, y + fontMetrics.bottom);
     }
-    FaceLandmark leftEye = face.getLandmark(FaceLandmark.LEFT_EYE);
-    if (leftEye != null) {
-      canvas.drawCircle(
-              translateX(leftEye.getPosition().x),
-              translateY(leftEye.getPosition().y),
-              FACE_POSITION_RADIUS,
-              facePositionPaint);
+  }
+
+  private void drawLabel(Canvas canvas, int label, float x, float y) {
+    if (labelLengths[label] > 0) {
+      canvas.drawText(labelChars, label * LABEL_CAPACITY, labelLengths[label], x, y, idPaint);
     }
-    FaceLandmark rightEye = face.getLandmark(FaceLandmark.RIGHT_EYE);
-    if (rightEye != null) {
-      canvas.drawCircle(
-              translateX(rightEye.getPosition().x),
-              translateY(rightEye.getPosition().y),
-              FACE_POSITION_RADIUS,
-              facePositionPaint);
+  }
+
+  /**
+   * Maps the points to view coordinates in one pass, unless they were already mapped with the
+   * given transform.
+   */
+  private void mapToView(GraphicOverlay.Transform transform) {
+    if (transform == mappedTransform) {
+      return;
     }
+    transform.mapPoints(viewPoints, 0, displayed, BOX_COORDINATES, pointCoordinates / 2);
+    mappedTransform = transform;
+  }
+
+  private static int append(char[] chars, char[] dest, int offset) {
+    System.arraycopy(chars, 0, dest, offset, chars.length);
+    return offset + chars.length;
+  }
 
-    FaceLandmark leftCheek = face.getLandmark(FaceLandmark.LEFT_CHEEK);
-    if (leftCheek != null) {
-      canvas.drawCircle(
-              translateX(leftCheek.getPosition().x),
-              translateY(leftCheek.getPosition().y),
-              FACE_POSITION_RADIUS,
-              facePositionPaint);
+  /**
+   * Writes the decimal digits of the value at the offset and returns the offset after them.
+   */
+  static int appendInt(int value, char[] dest, int offset) {
+    long remaining = value;
+    if (remaining < 0) {
+      dest[offset++] = '-';
+      remaining = -remaining;
+    }
+    int digits = 1;
+    for (long limit = 10; limit <= remaining; limit *= 10) {
+      digits++;
     }
-    FaceLandmark rightCheek =
-            face.getLandmark(FaceLandmark.RIGHT_CHEEK);
-    if (rightCheek != null) {
-      canvas.drawCircle(
-              translateX(rightCheek.getPosition().x),
-              translateY(rightCheek.getPosition().y),
-              FACE_POSITION_RADIUS,
-              facePositionPaint);
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      dest[i] = (char) ('0' + remaining % 10);
+      remaining /= 10;
     }
+    return offset + digits;
   }
-}
 
+  /**
+   * Writes the value rounded to two decimals, like {@code String.format("%.2f", value)} in a locale
+   * using a dot, at the offset and returns the offset after it.
+   */
+  static int appendFixedPoint(float value, char[] dest, int offset) {
+    // Rounds the exact value of the float, as the formatter does.
+    int hundredths = (int) Math.round(Math.abs((double) value) * 100);
+    if (value < 0 && hundredths != 0) {
+      dest[offset++] = '-';
+    }
+    offset = appendInt(hundredths / 100, dest, offset);
+    dest[offset++] = '.';
+    dest[offset++] = (char) ('0' + (hundredths / 10) % 10);
+    dest[offset++] = (char) ('0' + hundredths % 10);
+    return offset;
+  }
+}
@@ -0,0 +1,173 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceContour;
+import com.google.mlkit.vision.face.FaceLandmark;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A detected face in a compact form: its box, its contour and landmark points in one primitive
+ * array, and its labels, which is everything the overlay draws. Immutable, and can be written to
+ * and read from a stream.
+ */
+public final class FaceData {
+    // Landmarks kept in addition to the contour points.
+    private static final int[] LANDMARK_TYPES = {
+            FaceLandmark.LEFT_EYE, FaceLandmark.RIGHT_EYE,
+            FaceLandmark.LEFT_CHEEK, FaceLandmark.RIGHT_CHEEK
+    };
+
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+    // Contour and landmark points as x, y pairs, in image coordinates. Must not be modified.
+    public final float[] points;
+    public final Integer trackingId;
+    public final Float smilingProbability;
+    public final Float rightEyeOpenProbability;
+    public final Float leftEyeOpenProbability;
+
+    public FaceData(float left, float top, float right, float bottom, float[] points,
+                    Integer trackingId, Float smilingProbability, Float rightEyeOpenProbability,
+                    Float leftEyeOpenProbability) {
+        if (points.length % 2 != 0) {
+            throw new IllegalArgumentException("Expected x, y pairs");
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.points = points;
+        this.trackingId = trackingId;
+        this.smilingProbability = smilingProbability;
+        this.rightEyeOpenProbability = rightEyeOpenProbability;
+        this.leftEyeOpenProbability = leftEyeOpenProbability;
+    }
+
+    /**
+     * Flattens the contours and the landmarks of a detected face.
+     */
+    public static FaceData fromFace(Face face) {
+        int coordinates = 0;
+        for (FaceContour faceContour : face.getAllContours()) {
+            coordinates += faceContour.getPoints().size() * 2;
+        }
+        float[] points = new float[coordinates + LANDMARK_TYPES.length * 2];
+
+        int index = 0;
+        for (FaceContour faceContour : face.getAllContours()) {
+            List<PointF> contourPoints = faceContour.getPoints();
+            for (int i = 0; i < contourPoints.size(); i++) {
+                PointF point = contourPoints.get(i);
+                points[index++] = point.x;
+                points[index++] = point.y;
+            }
+        }
+        for (int landmarkType : LANDMARK_TYPES) {
+            FaceLandmark landmark = face.getLandmark(landmarkType);
+            if (landmark != null) {
+                points[index++] = landmark.getPosition().x;
+                points[index++] = landmark.getPosition().y;
+            }
+        }
+        if (index < points.length) {
+            float[] found = new float[index];
+            System.arraycopy(points, 0, found, 0, index);
+            points = found;
+        }
+
+        Rect box = face.getBoundingBox();
+        return new FaceData(box.left, box.top, box.right, box.bottom, points,
+                face.getTrackingId(), face.getSmilingProbability(),
+                face.getRightEyeOpenProbability(), face.getLeftEyeOpenProbability());
+    }
+
+    /**
+     * Flattens every detected face.
+     */
+    public static List<FaceData> fromFaces(List<Face> faces) {
+        List<FaceData> result = new ArrayList<>(faces.size());
+        for (Face face : faces) {
+            result.add(fromFace(face));
+        }
+        return result;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeFloat(left);
+        out.writeFloat(top);
+        out.writeFloat(right);
+        out.writeFloat(bottom);
+        out.writeInt(points.length);
+        for (float coordinate : points) {
+            out.writeFloat(coordinate);
+        }
+        out.writeBoolean(trackingId != null);
+        if (trackingId != null) {
+            out.writeInt(trackingId);
+        }
+        writeProbability(out, smilingProbability);
+        writeProbability(out, rightEyeOpenProbability);
+        writeProbability(out, leftEyeOpenProbability);
+    }
+
+    public static FaceData readFrom(DataInput in) throws IOException {
+        float left = in.readFloat();
+        float top = in.readFloat();
+        float right = in.readFloat();
+        float bottom = in.readFloat();
+        int coordinates = in.readInt();
+        if (coordinates < 0 || coordinates % 2 != 0) {
+            throw new IOException("Invalid point coordinate count " + coordinates);
+        }
+        float[] points = new float[coordinates];
+        for (int i = 0; i < coordinates; i++) {
+            points[i] = in.readFloat();
+        }
+        Integer trackingId = in.readBoolean() ? in.readInt() : null;
+        return new FaceData(left, top, right, bottom, points, trackingId, readProbability(in),
+                readProbability(in), readProbability(in));
+    }
+
+    /**
+     * Writes a list of faces, see {@link #readListFrom(DataInput)}.
+     */
+    public static void writeListTo(List<FaceData> faces, DataOutput out) throws IOException {
+        out.writeInt(faces.size());
+        for (FaceData face : faces) {
+            face.writeTo(out);
+        }
+    }
+
+    public static List<FaceData> readListFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid face count " + count);
+        }
+        List<FaceData> faces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            faces.add(readFrom(in));
+        }
+        return faces;
+    }
+
+    private static void writeProbability(DataOutput out, Float probability) throws IOException {
+        out.writeBoolean(probability != null);
+        if (probability != null) {
+            out.writeFloat(probability);
+        }
+    }
+
+    private static Float readProbability(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readFloat() : null;
+    }
+}
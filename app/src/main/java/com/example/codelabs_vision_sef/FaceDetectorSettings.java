@@ -0,0 +1,151 @@
+package com.example.codelabs_vision_sef;
+
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import java.util.Locale;
+
+/**
+ * Settings of a face detector, with a name that identifies them across runs and library versions.
+ * <p>
+ * <p>{@link FaceDetectorOptions} can not be read back, so results stored by
+ * {@link DetectionCache} are keyed by {@link #getName()} instead, which is built from the settings
+ * themselves. Defaults are the ones of {@link FaceDetectorOptions.Builder}.
+ */
+public final class FaceDetectorSettings {
+    private final int performanceMode;
+    private final int landmarkMode;
+    private final int contourMode;
+    private final int classificationMode;
+    private final float minFaceSize;
+    private final boolean tracking;
+
+    // Built on first use.
+    private FaceDetectorOptions options;
+
+    public static final class Builder {
+        private int performanceMode = FaceDetectorOptions.PERFORMANCE_MODE_FAST;
+        private int landmarkMode = FaceDetectorOptions.LANDMARK_MODE_NONE;
+        private int contourMode = FaceDetectorOptions.CONTOUR_MODE_NONE;
+        private int classificationMode = FaceDetectorOptions.CLASSIFICATION_MODE_NONE;
+        private float minFaceSize = 0.1f;
+        private boolean tracking;
+
+        public Builder setPerformanceMode(int performanceMode) {
+            this.performanceMode = performanceMode;
+            return this;
+        }
+
+        public Builder setLandmarkMode(int landmarkMode) {
+            this.landmarkMode = landmarkMode;
+            return this;
+        }
+
+        public Builder setContourMode(int contourMode) {
+            this.contourMode = contourMode;
+            return this;
+        }
+
+        public Builder setClassificationMode(int classificationMode) {
+            this.classificationMode = classificationMode;
+            return this;
+        }
+
+        public Builder setMinFaceSize(float minFaceSize) {
+            this.minFaceSize = minFaceSize;
+            return this;
+        }
+
+        public Builder enableTracking() {
+            tracking = true;
+            return this;
+        }
+
+        public FaceDetectorSettings build() {
+            return new FaceDetectorSettings(this);
+        }
+    }
+
+    private FaceDetectorSettings(Builder builder) {
+        performanceMode = builder.performanceMode;
+        landmarkMode = builder.landmarkMode;
+        contourMode = builder.contourMode;
+        classificationMode = builder.classificationMode;
+        minFaceSize = builder.minFaceSize;
+        tracking = builder.tracking;
+    }
+
+    /**
+     * Returns the ML Kit options with these settings, the same instance on every call.
+     */
+    public synchronized FaceDetectorOptions getOptions() {
+        if (options == null) {
+            FaceDetectorOptions.Builder builder = new FaceDetectorOptions.Builder()
+                    .setPerformanceMode(performanceMode)
+                    .setLandmarkMode(landmarkMode)
+                    .setContourMode(contourMode)
+                    .setClassificationMode(classificationMode)
+                    .setMinFaceSize(minFaceSize);
+            if (tracking) {
+                builder.enableTracking();
+            }
+            options = builder.build();
+        }
+        return options;
+    }
+
+    /**
+     * Returns a name that only equal settings share, such as {@code face-fast-contours-min0.10}.
+     */
+    public String getName() {
+        StringBuilder name = new StringBuilder("face");
+        name.append(performanceMode == FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE
+                ? "-accurate" : "-fast");
+        if (landmarkMode == FaceDetectorOptions.LANDMARK_MODE_ALL) {
+            name.append("-landmarks");
+        }
+        if (contourMode == FaceDetectorOptions.CONTOUR_MODE_ALL) {
+            name.append("-contours");
+        }
+        if (classificationMode == FaceDetectorOptions.CLASSIFICATION_MODE_ALL) {
+            name.append("-classification");
+        }
+        if (tracking) {
+            name.append("-tracking");
+        }
+        name.append(String.format(Locale.US, "-min%.2f", minFaceSize));
+        return name.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FaceDetectorSettings)) {
+            return false;
+        }
+        FaceDetectorSettings other = (FaceDetectorSettings) o;
+        return performanceMode == other.performanceMode
+                && landmarkMode == other.landmarkMode
+                && contourMode == other.contourMode
+                && classificationMode == other.classificationMode
+                && Float.compare(minFaceSize, other.minFaceSize) == 0
+                && tracking == other.tracking;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = performanceMode;
+        result = 31 * result + landmarkMode;
+        result = 31 * result + contourMode;
+        result = 31 * result + classificationMode;
+        result = 31 * result + Float.floatToIntBits(minFaceSize);
+        result = 31 * result + (tracking ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
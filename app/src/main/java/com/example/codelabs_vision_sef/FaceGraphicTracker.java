@@ -0,0 +1,153 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps one {@link FaceContourGraphic} per face across detections, so a face keeps its graphic and
+ * color and moves smoothly instead of being redrawn from scratch on every result.
+ * <p>
+ * <p>The graphics are {@link KeyedGraphics} of the overlay, keyed by tracking id. The detector only
+ * assigns ids with tracking enabled and contours off, so a face without an id takes over the key of
+ * the untracked face of the previous result whose box overlaps its own the most. Graphics of faces
+ * missing from a result are removed from the overlay.
+ * <p>
+ * <p>Must be used on the thread that draws the overlay.
+ */
+public class FaceGraphicTracker {
+    // Least intersection over union for two boxes of untracked faces to be the same face.
+    private static final float MIN_UNTRACKED_OVERLAP = 0.3f;
+
+    private final KeyedGraphics<FaceData, FaceContourGraphic> graphics;
+    // Keys of the untracked faces of the previous result not yet taken over, and of this one.
+    private List<Object> untrackedKeys = new ArrayList<>();
+    private List<Object> nextUntrackedKeys = new ArrayList<>();
+    private final RectF detectedBox = new RectF();
+
+    public FaceGraphicTracker(GraphicOverlay overlay) {
+        graphics = new KeyedGraphics<>(overlay, new FaceBinder());
+    }
+
+    /**
+     * Shows the faces of a new detection in the overlay instead of those of the previous one.
+     *
+     * @return the graphic of every face, in the order of the faces
+     */
+    public List<FaceContourGraphic> update(List<FaceData> faces) {
+        List<FaceContourGraphic> result = graphics.update(faces);
+        swapUntrackedKeys();
+        return result;
+    }
+
+    /**
+     * Same as {@link #update(List)}, recording the changes to the overlay in a transaction.
+     */
+    public List<FaceContourGraphic> update(List<FaceData> faces,
+                                           GraphicOverlay.Transaction transaction) {
+        List<FaceContourGraphic> result = graphics.update(faces, transaction);
+        swapUntrackedKeys();
+        return result;
+    }
+
+    /**
+     * Removes every face from the overlay and forgets it, for example when a different image is
+     * shown.
+     */
+    public void clear() {
+        graphics.clear();
+        untrackedKeys.clear();
+    }
+
+    /**
+     * Same as {@link #clear()}, recording the removals in a transaction.
+     */
+    public void clear(GraphicOverlay.Transaction transaction) {
+        graphics.clear(transaction);
+        untrackedKeys.clear();
+    }
+
+    public long getCreatedCount() {
+        return graphics.getCreatedCount();
+    }
+
+    public long getReusedCount() {
+        return graphics.getReusedCount();
+    }
+
+    public long getEvictedCount() {
+        return graphics.getRemovedCount();
+    }
+
+    @Override
+    public String toString() {
+        return "FaceGraphicTracker{created=" + getCreatedCount() + ", reused=" + getReusedCount()
+                + ", evicted=" + getEvictedCount() + "}";
+    }
+
+    private class FaceBinder implements KeyedGraphics.Binder<FaceData, FaceContourGraphic> {
+        @Override
+        public Object keyOf(FaceData face) {
+            if (face.trackingId != null) {
+                return face.trackingId;
+            }
+            Object key = takeOverlapping(face);
+            nextUntrackedKeys.add(key);
+            return key;
+        }
+
+        @Override
+        public FaceContourGraphic create(GraphicOverlay overlay, FaceData face) {
+            FaceContourGraphic graphic = new FaceContourGraphic(overlay);
+            graphic.updateFace(face);
+            return graphic;
+        }
+
+        @Override
+        public void update(FaceContourGraphic graphic, FaceData face) {
+            graphic.updateFace(face);
+        }
+    }
+
+    private void swapUntrackedKeys() {
+        List<Object> keys = untrackedKeys;
+        untrackedKeys = nextUntrackedKeys;
+        nextUntrackedKeys = keys;
+        nextUntrackedKeys.clear();
+    }
+
+    /**
+     * Removes and returns the key of the previous untracked face whose box overlaps the given one
+     * the most, if it overlaps enough, else returns a new key.
+     */
+    private Object takeOverlapping(FaceData face) {
+        int best = -1;
+        float bestOverlap = MIN_UNTRACKED_OVERLAP;
+        for (int i = 0; i < untrackedKeys.size(); i++) {
+            graphics.get(untrackedKeys.get(i)).getDetectedBox(detectedBox);
+            float overlap = intersectionOverUnion(detectedBox, face.left, face.top, face.right,
+                    face.bottom);
+            if (overlap >= bestOverlap) {
+                best = i;
+                bestOverlap = overlap;
+            }
+        }
+        return best != -1 ? untrackedKeys.remove(best) : new Object();
+    }
+
+    /**
+     * Returns the area of the intersection of two boxes divided by the area of their union.
+     */
+    static float intersectionOverUnion(RectF a, float left, float top, float right,
+                                       float bottom) {
+        float width = Math.min(a.right, right) - Math.max(a.left, left);
+        float height = Math.min(a.bottom, bottom) - Math.max(a.top, top);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        float intersection = width * height;
+        float union = a.width() * a.height() + (right - left) * (bottom - top) - intersection;
+        return intersection / union;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single image produced by a {@link FrameSource}. The bitmap is owned by the source and must not
+ * be modified or recycled by consumers. A consumer calls {@link #release()} once it no longer
+ * uses the frame, whether it was shown or dropped, so the source can reuse the bitmap.
+ */
+public final class Frame {
+    private final Bitmap bitmap;
+    private final long captureTimeNanos;
+    private final int facing;
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param captureTimeNanos {@link android.os.SystemClock#elapsedRealtimeNanos()} at capture
+     * @param facing           lens facing of the camera the frame comes from, see
+     *                         {@link GraphicOverlay#setCameraInfo(int, int, int)}
+     */
+    public Frame(Bitmap bitmap, long captureTimeNanos, int facing) {
+        this(bitmap, captureTimeNanos, facing, null);
+    }
+
+    /**
+     * @param onRelease run once, on the thread that releases the frame, to take the bitmap back
+     */
+    public Frame(Bitmap bitmap, long captureTimeNanos, int facing, Runnable onRelease) {
+        this.bitmap = bitmap;
+        this.captureTimeNanos = captureTimeNanos;
+        this.facing = facing;
+        this.onRelease = onRelease;
+    }
+
+    /**
+     * Hands the bitmap back to the source. The frame must not be used afterwards. Releasing a frame
+     * again does nothing.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true) && onRelease != null) {
+            onRelease.run();
+        }
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public long getCaptureTimeNanos() {
+        return captureTimeNanos;
+    }
+
+    public int getFacing() {
+        return facing;
+    }
+}
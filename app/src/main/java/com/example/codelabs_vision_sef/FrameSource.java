@@ -0,0 +1,26 @@
+package com.example.codelabs_vision_sef;
+
+/**
+ * A source of frames for the streaming mode, such as a camera or a replay of still images.
+ */
+public interface FrameSource {
+
+    /**
+     * Receives frames on a thread of the source. Implementations must return quickly; frames that
+     * can not be processed right away should be queued or dropped.
+     */
+    interface Listener {
+        void onFrame(Frame frame);
+    }
+
+    /**
+     * Starts delivering frames to the listener.
+     */
+    void start(Listener listener);
+
+    /**
+     * Stops delivering frames. Does not wait, so a frame that was being delivered while this was
+     * called may still arrive.
+     */
+    void stop();
+}
@@ -15,12 +15,20 @@ package com.example.codelabs_vision_sef;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.hardware.camera2.CameraCharacteristics;
 import android.util.AttributeSet;
 import android.view.View;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -39,16 +47,254 @@ import java.util.Set;
  * supplied value from the preview scale to the view scale.
  * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
  * coordinate from the preview's coordinate system to the view coordinate system.
+ * <li>{@link Graphic#mapPoints(float[])} and {@link Graphic#mapRect(RectF)} do the same for many
+ * coordinates at once.
  * </ol>
+ * <p>
+ * <p>The scale, mirroring and offset are combined into an immutable {@link Transform}, replaced
+ * only when the view size or the camera info change. A graphic that maps many points should take
+ * it once with {@link Graphic#getTransform()}, so all of them are mapped alike, and can keep its
+ * mapped points for as long as the same instance is returned.
+ * <p>
+ * <p>The graphics and the transform are published together as an immutable {@link State}.
+ * Updates copy the current state, change the copy and publish it, so {@link #onDraw(Canvas)} never
+ * takes a lock and updates never wait for a frame to be drawn.
+ * <p>
+ * <p>Many graphics can be changed at once with {@link #addAll}, {@link #replaceAll} or a
+ * {@link Transaction}, which publish a single new state and invalidate the view once.
+ * <p>
+ * <p>Graphics that report their view-space bounds through {@link Graphic#getBounds(RectF)} are
+ * only invalidated where they were and where they are now, and are skipped by
+ * {@link #onDraw(Canvas)} when they fall outside the clip. With hardware acceleration the dirty
+ * region is only a hint, but graphics outside the view are still skipped.
+ * <p>
+ * <p>Once the same graphics have been drawn twice in a row with nothing invalidated in between,
+ * they are recorded into a {@link Picture}, and when {@link #onDraw(Canvas)} runs again with the
+ * graphics unchanged it replays the recording instead of drawing every graphic again. That is the
+ * case when the overlay is invalidated without a new state, when it is drawn in software, where
+ * every redraw of an overlapping view draws it again, or when it is drawn into another canvas. With
+ * hardware acceleration, redraws of other views reuse the display list of the overlay and do not
+ * call {@link #onDraw(Canvas)} at all, so the recording does not help there. Publishing a new
+ * state, by changing the graphics, the camera info or the view size, and
+ * {@link Graphic#postInvalidate()} discard the recording. Animating graphics keep invalidating
+ * themselves, so they are drawn directly on every frame until they come to rest.
  */
 public class GraphicOverlay extends View {
+    // Serializes updates, readers use the published state without locking.
     private final Object lock = new Object();
-    private int previewWidth;
-    private float widthScaleFactor = 1.0f;
-    private int previewHeight;
-    private float heightScaleFactor = 1.0f;
-    private int facing = CameraCharacteristics.LENS_FACING_BACK;
-    private Set<Graphic> graphics = new HashSet<>();
+    private volatile State state = State.EMPTY;
+
+    // Recorded bounds of a graphic whose bounds are not known.
+    private static final float[] UNKNOWN_BOUNDS = new float[0];
+
+    // Changed by every invalidation of a graphic, so a recording of older content is not replayed.
+    private final AtomicInteger contentVersion = new AtomicInteger();
+    private volatile boolean recordingEnabled = true;
+
+    // Used by onDraw only.
+    private final Rect clipBounds = new Rect();
+    private int lastFrameDrawnCount;
+    private int lastFrameSkippedCount;
+    private boolean lastFrameReplayed;
+    private long drawnCount;
+    private long skippedCount;
+    private long replayedCount;
+    // State and content version of the last frame, and of the recording if there is one.
+    private State lastFrameState;
+    private int lastFrameVersion;
+    private final Picture recording = new Picture();
+    private State recordedState;
+    private int recordedVersion;
+
+    /**
+     * Everything drawing depends on, published as a whole whenever any part of it changes.
+     */
+    private static final class State {
+        static final State EMPTY = new State(new Graphic[0], 0, 0,
+                CameraCharacteristics.LENS_FACING_BACK, 0, 0, Transform.IDENTITY);
+
+        final Graphic[] graphics;
+        final int previewWidth;
+        final int previewHeight;
+        final int facing;
+        final int viewWidth;
+        final int viewHeight;
+        final Transform transform;
+
+        State(Graphic[] graphics, int previewWidth, int previewHeight, int facing, int viewWidth,
+              int viewHeight, Transform transform) {
+            this.graphics = graphics;
+            this.previewWidth = previewWidth;
+            this.previewHeight = previewHeight;
+            this.facing = facing;
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+            this.transform = transform;
+        }
+
+        State withGraphics(Graphic[] graphics) {
+            return new State(graphics, previewWidth, previewHeight, facing, viewWidth,
+                    viewHeight, transform);
+        }
+
+        /**
+         * Returns a copy with new camera info and view size. Without a preview size graphics are
+         * drawn unscaled; without a view size the previous scale is kept. The transform stays the
+         * same instance if its values did not change.
+         */
+        State withCameraInfo(int previewWidth, int previewHeight, int facing, int viewWidth,
+                             int viewHeight) {
+            float widthScaleFactor = transform.widthScaleFactor;
+            float heightScaleFactor = transform.heightScaleFactor;
+            if ((previewWidth == 0) || (previewHeight == 0)) {
+                widthScaleFactor = 1.0f;
+                heightScaleFactor = 1.0f;
+            } else if ((viewWidth != 0) && (viewHeight != 0)) {
+                widthScaleFactor = (float) viewWidth / (float) previewWidth;
+                heightScaleFactor = (float) viewHeight / (float) previewHeight;
+            }
+            Transform transform = new Transform(widthScaleFactor, heightScaleFactor,
+                    facing == CameraCharacteristics.LENS_FACING_FRONT, viewWidth);
+            if (transform.equals(this.transform)) {
+                transform = this.transform;
+            }
+            return new State(graphics, previewWidth, previewHeight, facing, viewWidth, viewHeight,
+                    transform);
+        }
+    }
+
+    /**
+     * Maps image coordinates to view coordinates: scaled per axis, then mirrored horizontally
+     * within the view for the front camera. Every x is mapped to {@code x * a + b} and every y to
+     * {@code y * c}, so a transform is an affine matrix without rotation, applied without going
+     * through {@link android.graphics.Matrix}.
+     * <p>
+     * <p>Immutable, so a graphic can map all its points with one instance and tell from the
+     * instance whether points it mapped before are still valid.
+     */
+    public static final class Transform {
+        static final Transform IDENTITY = new Transform(1.0f, 1.0f, false, 0);
+
+        final float widthScaleFactor;
+        final float heightScaleFactor;
+        final boolean mirrored;
+        // x' = x * xScale + xOffset, y' = y * heightScaleFactor.
+        private final float xScale;
+        private final float xOffset;
+
+        Transform(float widthScaleFactor, float heightScaleFactor, boolean mirrored,
+                  int viewWidth) {
+            this.widthScaleFactor = widthScaleFactor;
+            this.heightScaleFactor = heightScaleFactor;
+            this.mirrored = mirrored;
+            this.xScale = mirrored ? -widthScaleFactor : widthScaleFactor;
+            this.xOffset = mirrored ? viewWidth : 0;
+        }
+
+        /**
+         * Adjusts a horizontal size from the preview scale to the view scale.
+         */
+        public float scaleX(float horizontal) {
+            return horizontal * widthScaleFactor;
+        }
+
+        /**
+         * Adjusts a vertical size from the preview scale to the view scale.
+         */
+        public float scaleY(float vertical) {
+            return vertical * heightScaleFactor;
+        }
+
+        public float mapX(float x) {
+            return x * xScale + xOffset;
+        }
+
+        public float mapY(float y) {
+            return y * heightScaleFactor;
+        }
+
+        /**
+         * Maps an x coordinate of the view back to the preview's coordinate system, for example
+         * the position of a touch.
+         */
+        public float unmapX(float x) {
+            return (x - xOffset) / xScale;
+        }
+
+        /**
+         * Maps a y coordinate of the view back to the preview's coordinate system.
+         */
+        public float unmapY(float y) {
+            return y / heightScaleFactor;
+        }
+
+        /**
+         * Whether x coordinates are mirrored, which turns a left edge into a right edge.
+         */
+        public boolean isMirrored() {
+            return mirrored;
+        }
+
+        /**
+         * Maps x, y pairs in place.
+         */
+        public void mapPoints(float[] points) {
+            mapPoints(points, 0, points, 0, points.length / 2);
+        }
+
+        /**
+         * Maps {@code pointCount} x, y pairs of {@code src}, starting at {@code srcIndex}, into
+         * {@code dst} from {@code dstIndex} on. The arrays may be the same.
+         */
+        public void mapPoints(float[] dst, int dstIndex, float[] src, int srcIndex,
+                              int pointCount) {
+            float xScale = this.xScale;
+            float xOffset = this.xOffset;
+            float yScale = heightScaleFactor;
+            for (int i = 0; i < pointCount * 2; i += 2) {
+                dst[dstIndex + i] = src[srcIndex + i] * xScale + xOffset;
+                dst[dstIndex + i + 1] = src[srcIndex + i + 1] * yScale;
+            }
+        }
+
+        /**
+         * Maps a rectangle in place, keeping left of right when mirrored.
+         */
+        public void mapRect(RectF rect) {
+            float x0 = mapX(rect.left);
+            float x1 = mapX(rect.right);
+            rect.left = Math.min(x0, x1);
+            rect.right = Math.max(x0, x1);
+            rect.top = mapY(rect.top);
+            rect.bottom = mapY(rect.bottom);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Transform)) {
+                return false;
+            }
+            Transform other = (Transform) o;
+            return xScale == other.xScale && xOffset == other.xOffset
+                    && heightScaleFactor == other.heightScaleFactor;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(xScale);
+            result = 31 * result + Float.floatToIntBits(xOffset);
+            result = 31 * result + Float.floatToIntBits(heightScaleFactor);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "Transform{x * " + xScale + " + " + xOffset + ", y * " + heightScaleFactor + "}";
+        }
+    }
 
     /**
      * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
@@ -57,6 +303,9 @@ public class GraphicOverlay extends View {
      */
     public abstract static class Graphic {
         private GraphicOverlay overlay;
+        // View-space left, top, right and bottom recorded when the graphic was last invalidated,
+        // UNKNOWN_BOUNDS if it could not tell, or null if it was never invalidated.
+        private volatile float[] recordedBounds;
 
         public Graphic(GraphicOverlay overlay) {
             this.overlay = overlay;
@@ -71,24 +320,38 @@ public class GraphicOverlay extends View {
          * supplied value from the preview scale to the view scale.
          * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
          * coordinate from the preview's coordinate system to the view coordinate system.
+         * <li>{@link Graphic#mapPoints(float[])} and {@link Graphic#mapRect(RectF)} map many
+         * coordinates at once.
          * </ol>
          *
          * @param canvas drawing canvas
          */
         public abstract void draw(Canvas canvas);
 
+        /**
+         * Computes the view-space bounds of everything {@link #draw(Canvas)} paints with the current
+         * transform. Graphics that can not tell return false, the default, and are then always
+         * drawn and invalidate the whole overlay.
+         *
+         * @param outBounds receives the bounds
+         * @return whether the bounds are known
+         */
+        public boolean getBounds(RectF outBounds) {
+            return false;
+        }
+
         /**
          * Adjusts a horizontal value of the supplied value from the preview scale to the view scale.
          */
         public float scaleX(float horizontal) {
-            return horizontal * overlay.widthScaleFactor;
+            return overlay.state.transform.scaleX(horizontal);
         }
 
         /**
          * Adjusts a vertical value of the supplied value from the preview scale to the view scale.
          */
         public float scaleY(float vertical) {
-            return vertical * overlay.heightScaleFactor;
+            return overlay.state.transform.scaleY(vertical);
         }
 
         /**
@@ -102,22 +365,58 @@ public class GraphicOverlay extends View {
          * Adjusts the x coordinate from the preview's coordinate system to the view coordinate system.
          */
         public float translateX(float x) {
-            if (overlay.facing == CameraCharacteristics.LENS_FACING_FRONT) {
-                return overlay.getWidth() - scaleX(x);
-            } else {
-                return scaleX(x);
-            }
+            return overlay.state.transform.mapX(x);
         }
 
         /**
          * Adjusts the y coordinate from the preview's coordinate system to the view coordinate system.
          */
         public float translateY(float y) {
-            return scaleY(y);
+            return overlay.state.transform.mapY(y);
+        }
+
+        /**
+         * Returns the current transform from the preview's coordinate system to the view coordinate
+         * system. Mapping with one instance gives consistent results even while the overlay
+         * changes; a new instance is only published when the transform changed.
+         */
+        public Transform getTransform() {
+            return overlay.state.transform;
         }
 
+        /**
+         * Maps x, y pairs from the preview's coordinate system to the view coordinate system, in
+         * place and all with the same transform.
+         */
+        public void mapPoints(float[] points) {
+            getTransform().mapPoints(points);
+        }
+
+        /**
+         * Maps a rectangle from the preview's coordinate system to the view coordinate system, in
+         * place.
+         */
+        public void mapRect(RectF rect) {
+            getTransform().mapRect(rect);
+        }
+
+        /**
+         * Invalidates the area the graphic was last drawn in and the area it covers now. Must be
+         * called whenever what the graphic draws changes, as it also discards the recording of the
+         * overlay.
+         */
         public void postInvalidate() {
-            overlay.postInvalidate();
+            overlay.invalidateGraphic(this);
+        }
+
+        /**
+         * Schedules a redraw at the next display frame, for a graphic that animates between
+         * updates. Only the bounds recorded at the last {@link #postInvalidate()} are redrawn, so
+         * they must cover the whole animation. The overlay is not recorded while graphics animate.
+         * Allocates nothing, so it can be called from {@link #draw(Canvas)}.
+         */
+        public void postInvalidateOnAnimation() {
+            overlay.invalidateGraphicOnAnimation(this);
         }
     }
 
@@ -125,34 +424,135 @@ public class GraphicOverlay extends View {
         super(context, attrs);
     }
 
+    /**
+     * Returns the current transform from the preview's coordinate system to the view coordinate
+     * system.
+     */
+    public Transform getTransform() {
+        return state.transform;
+    }
+
     /**
      * Removes all graphics from the overlay.
      */
     public void clear() {
-        synchronized (lock) {
-            graphics.clear();
-        }
-        postInvalidate();
+        beginTransaction().clear().commit();
     }
 
     /**
      * Adds a graphic to the overlay.
      */
     public void add(Graphic graphic) {
-        synchronized (lock) {
-            graphics.add(graphic);
-        }
-        postInvalidate();
+        beginTransaction().add(graphic).commit();
     }
 
     /**
      * Removes a graphic from the overlay.
      */
     public void remove(Graphic graphic) {
-        synchronized (lock) {
-            graphics.remove(graphic);
+        beginTransaction().remove(graphic).commit();
+    }
+
+    /**
+     * Adds several graphics to the overlay, invalidating it once.
+     */
+    public void addAll(Collection<? extends Graphic> graphics) {
+        beginTransaction().addAll(graphics).commit();
+    }
+
+    /**
+     * Replaces all graphics of the overlay with the given ones, invalidating it once.
+     */
+    public void replaceAll(Collection<? extends Graphic> graphics) {
+        beginTransaction().clear().addAll(graphics).commit();
+    }
+
+    /**
+     * Starts a batch of changes that is applied atomically by {@link Transaction#commit()}.
+     */
+    public Transaction beginTransaction() {
+        return new Transaction();
+    }
+
+    /**
+     * A batch of changes to the graphics of the overlay. Changes are recorded in order and applied
+     * together on {@link #commit()}, which takes the update lock and invalidates the view once.
+     */
+    public final class Transaction {
+        // A null graphic records a clear, the flag tells additions from removals.
+        private final ArrayList<Graphic> graphics = new ArrayList<>();
+        private final ArrayList<Boolean> additions = new ArrayList<>();
+        private boolean committed;
+
+        private Transaction() {
+        }
+
+        public Transaction add(Graphic graphic) {
+            graphics.add(graphic);
+            additions.add(Boolean.TRUE);
+            return this;
+        }
+
+        public Transaction addAll(Collection<? extends Graphic> graphics) {
+            for (Graphic graphic : graphics) {
+                add(graphic);
+            }
+            return this;
+        }
+
+        public Transaction remove(Graphic graphic) {
+            graphics.add(graphic);
+            additions.add(Boolean.FALSE);
+            return this;
+        }
+
+        public Transaction clear() {
+            graphics.add(null);
+            additions.add(Boolean.FALSE);
+            return this;
+        }
+
+        /**
+         * Applies the recorded changes. A transaction can only be committed once.
+         */
+        public void commit() {
+            if (committed) {
+                throw new IllegalStateException("Transaction already committed");
+            }
+            committed = true;
+
+            RectF dirty = new RectF();
+            boolean dirtyKnown = true;
+            synchronized (lock) {
+                State current = state;
+                LinkedHashSet<Graphic> result = new LinkedHashSet<>(Arrays.asList(current.graphics));
+                for (int i = 0; i < graphics.size(); i++) {
+                    Graphic graphic = graphics.get(i);
+                    if (graphic == null) {
+                        result.clear();
+                    } else if (additions.get(i)) {
+                        result.add(graphic);
+                    } else {
+                        result.remove(graphic);
+                    }
+                }
+
+                // Only the graphics that appeared or disappeared need to be redrawn.
+                for (Graphic graphic : current.graphics) {
+                    if (!result.contains(graphic)) {
+                        dirtyKnown &= unionRecordedBounds(graphic, dirty);
+                    }
+                }
+                Set<Graphic> previous = new HashSet<>(Arrays.asList(current.graphics));
+                for (Graphic graphic : result) {
+                    if (!previous.contains(graphic)) {
+                        dirtyKnown &= recordBounds(graphic, dirty);
+                    }
+                }
+                state = current.withGraphics(result.toArray(new Graphic[0]));
+            }
+            postInvalidate(dirtyKnown, dirty);
         }
-        postInvalidate();
     }
 
     /**
@@ -161,29 +561,270 @@ public class GraphicOverlay extends View {
      */
     public void setCameraInfo(int previewWidth, int previewHeight, int facing) {
         synchronized (lock) {
-            this.previewWidth = previewWidth;
-            this.previewHeight = previewHeight;
-            this.facing = facing;
+            State current = state;
+            state = current.withCameraInfo(previewWidth, previewHeight, facing, current.viewWidth,
+                    current.viewHeight);
+            if (state.transform != current.transform) {
+                recordAllBounds();
+            }
         }
         postInvalidate();
     }
 
     /**
-     * Draws the overlay with its associated graphic objects.
+     * Sets the camera info for an image that is displayed scaled to fit the view, keeping its aspect
+     * ratio and aligned to the top left corner, the way an ImageView with fitStart shows it.
+     */
+    public void setImageInfo(int imageWidth, int imageHeight, int facing) {
+        State current = state;
+        int viewWidth = current.viewWidth;
+        int viewHeight = current.viewHeight;
+        if (viewWidth == 0 || viewHeight == 0 || imageWidth == 0 || imageHeight == 0) {
+            setCameraInfo(imageWidth, imageHeight, facing);
+            return;
+        }
+        // The preview is the area of the image that would fill the whole view at the same scale.
+        float scale = Math.min((float) viewWidth / imageWidth, (float) viewHeight / imageHeight);
+        setCameraInfo(Math.round(viewWidth / scale), Math.round(viewHeight / scale), facing);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        synchronized (lock) {
+            State current = state;
+            state = current.withCameraInfo(current.previewWidth, current.previewHeight,
+                    current.facing, w, h);
+            if (state.transform != current.transform) {
+                recordAllBounds();
+            }
+        }
+    }
+
+    /**
+     * Invalidates the union of the bounds a graphic was last invalidated with and its current
+     * bounds, or the whole overlay if either is unknown.
+     */
+    private void invalidateGraphic(Graphic graphic) {
+        contentVersion.incrementAndGet();
+        RectF dirty = new RectF();
+        boolean dirtyKnown = unionRecordedBounds(graphic, dirty);
+        dirtyKnown &= recordBounds(graphic, dirty);
+        postInvalidate(dirtyKnown, dirty);
+    }
+
+    /**
+     * Invalidates the recorded bounds of a graphic at the next display frame, or the whole overlay
+     * if they are unknown.
+     */
+    private void invalidateGraphicOnAnimation(Graphic graphic) {
+        contentVersion.incrementAndGet();
+        float[] bounds = graphic.recordedBounds;
+        if (bounds == null || bounds == UNKNOWN_BOUNDS) {
+            postInvalidateOnAnimation();
+        } else {
+            postInvalidateOnAnimation((int) Math.floor(bounds[0]), (int) Math.floor(bounds[1]),
+                    (int) Math.ceil(bounds[2]), (int) Math.ceil(bounds[3]));
+        }
+    }
+
+    /**
+     * Adds the recorded bounds of the graphic to the dirty region.
+     *
+     * @return false if the recorded bounds are unknown
+     */
+    private static boolean unionRecordedBounds(Graphic graphic, RectF dirty) {
+        float[] bounds = graphic.recordedBounds;
+        if (bounds == UNKNOWN_BOUNDS) {
+            return false;
+        }
+        if (bounds != null) {
+            union(dirty, bounds[0], bounds[1], bounds[2], bounds[3]);
+        }
+        return true;
+    }
+
+    /**
+     * Records the current bounds of the graphic and adds them to the dirty region.
+     *
+     * @return false if the current bounds are unknown
+     */
+    private static boolean recordBounds(Graphic graphic, RectF dirty) {
+        RectF bounds = new RectF();
+        if (!graphic.getBounds(bounds)) {
+            graphic.recordedBounds = UNKNOWN_BOUNDS;
+            return false;
+        }
+        graphic.recordedBounds = new float[]{bounds.left, bounds.top, bounds.right, bounds.bottom};
+        union(dirty, bounds.left, bounds.top, bounds.right, bounds.bottom);
+        return true;
+    }
+
+    /**
+     * Same as {@link RectF#union(float, float, float, float)}. Works on the fields, so it also runs
+     * against the stubbed framework classes of the local tests.
+     */
+    private static void union(RectF dirty, float left, float top, float right, float bottom) {
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        if (dirty.left < dirty.right && dirty.top < dirty.bottom) {
+            dirty.left = Math.min(dirty.left, left);
+            dirty.top = Math.min(dirty.top, top);
+            dirty.right = Math.max(dirty.right, right);
+            dirty.bottom = Math.max(dirty.bottom, bottom);
+        } else {
+            dirty.left = left;
+            dirty.top = top;
+            dirty.right = right;
+            dirty.bottom = bottom;
+        }
+    }
+
+    /**
+     * Records the bounds of every graphic again after the transform changed.
+     */
+    private void recordAllBounds() {
+        RectF ignored = new RectF();
+        for (Graphic graphic : state.graphics) {
+            recordBounds(graphic, ignored);
+        }
+    }
+
+    private void postInvalidate(boolean dirtyKnown, RectF dirty) {
+        if (!dirtyKnown) {
+            postInvalidate();
+        } else if (dirty.left < dirty.right && dirty.top < dirty.bottom) {
+            postInvalidate((int) Math.floor(dirty.left), (int) Math.floor(dirty.top),
+                    (int) Math.ceil(dirty.right), (int) Math.ceil(dirty.bottom));
+        }
+    }
+
+    /**
+     * Draws the overlay with its associated graphic objects. Replays the recording of the graphics
+     * if they did not change since it was made, records them if they did not change since the last
+     * frame, and otherwise draws them directly, skipping those whose recorded bounds are outside
+     * the clip.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        long token = StageMetrics.begin(StageMetrics.Stage.DRAW);
 
-        synchronized (lock) {
-            if ((previewWidth != 0) && (previewHeight != 0)) {
-                widthScaleFactor = (float) canvas.getWidth() / (float) previewWidth;
-                heightScaleFactor = (float) canvas.getHeight() / (float) previewHeight;
+        State current = state;
+        // Read before drawing, so content invalidated while drawing is not taken as recorded.
+        int version = contentVersion.get();
+        boolean replayed = false;
+        int drawn = 0;
+        int skipped = 0;
+        if (current == recordedState && version == recordedVersion) {
+            replayed = true;
+        } else if (recordingEnabled && current == lastFrameState && version == lastFrameVersion
+                && current.viewWidth > 0 && current.viewHeight > 0) {
+            Canvas recordingCanvas = recording.beginRecording(current.viewWidth,
+                    current.viewHeight);
+            for (Graphic graphic : current.graphics) {
+                graphic.draw(recordingCanvas);
             }
-
-            for (Graphic graphic : graphics) {
+            recording.endRecording();
+            drawn = current.graphics.length;
+            recordedState = current;
+            recordedVersion = version;
+            replayed = true;
+        } else {
+            recordedState = null;
+            boolean hasClip = canvas.getClipBounds(clipBounds);
+            for (Graphic graphic : current.graphics) {
+                float[] bounds = graphic.recordedBounds;
+                if (hasClip && bounds != null && bounds != UNKNOWN_BOUNDS
+                        && !intersectsClip(bounds)) {
+                    skipped++;
+                    continue;
+                }
                 graphic.draw(canvas);
+                drawn++;
             }
         }
+        if (replayed) {
+            canvas.drawPicture(recording);
+            replayedCount++;
+            StageMetrics.add(StageMetrics.Counter.FRAMES_REPLAYED, 1);
+        }
+        lastFrameState = current;
+        lastFrameVersion = version;
+        lastFrameReplayed = replayed;
+        lastFrameDrawnCount = drawn;
+        lastFrameSkippedCount = skipped;
+        drawnCount += drawn;
+        skippedCount += skipped;
+        StageMetrics.add(StageMetrics.Counter.GRAPHICS_DRAWN, drawn);
+        StageMetrics.add(StageMetrics.Counter.GRAPHICS_SKIPPED, skipped);
+        StageMetrics.end(StageMetrics.Stage.DRAW, token);
+    }
+
+    /**
+     * Same as {@link Rect#intersects(int, int, int, int)} with the clip bounds, on the fields like
+     * {@link #union}.
+     */
+    private boolean intersectsClip(float[] bounds) {
+        return clipBounds.left < Math.ceil(bounds[2])
+                && Math.floor(bounds[0]) < clipBounds.right
+                && clipBounds.top < Math.ceil(bounds[3])
+                && Math.floor(bounds[1]) < clipBounds.bottom;
+    }
+
+    /**
+     * Sets whether unchanged graphics are recorded and replayed, on by default. Turning it off
+     * draws every graphic on every frame, for comparison.
+     */
+    public void setRecordingEnabled(boolean enabled) {
+        recordingEnabled = enabled;
+        if (!enabled) {
+            // Makes onDraw drop the recording.
+            contentVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns whether the last frame replayed a recording of the graphics. Graphics drawn to make
+     * the recording count as drawn.
+     */
+    public boolean isLastFrameReplayed() {
+        return lastFrameReplayed;
+    }
+
+    /**
+     * Returns how many frames replayed a recording since the overlay was created.
+     */
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * Returns how many graphics the last frame drew.
+     */
+    public int getLastFrameDrawnCount() {
+        return lastFrameDrawnCount;
+    }
+
+    /**
+     * Returns how many graphics the last frame skipped because they were outside the clip.
+     */
+    public int getLastFrameSkippedCount() {
+        return lastFrameSkippedCount;
+    }
+
+    /**
+     * Returns how many graphics were drawn since the overlay was created.
+     */
+    public long getDrawnCount() {
+        return drawnCount;
+    }
+
+    /**
+     * Returns how many graphics were skipped since the overlay was created.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
     }
 }
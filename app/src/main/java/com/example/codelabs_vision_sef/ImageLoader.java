@@ -0,0 +1,137 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes and resizes selected images off the UI thread.
+ * <p>
+ * <p>Every {@link #load} starts a new generation. Work of older generations is dropped as soon as
+ * it notices it has been superseded, and the bitmaps it already produced go straight back to the
+ * pool, so only the most recent selection ever reaches the screen. Work is run by a single
+ * background thread with a short queue; when the queue is full the oldest pending load is
+ * discarded, since it is stale anyway.
+ */
+public class ImageLoader implements LifecycleEventObserver {
+    private static final String TAG = "ImageLoader";
+    private static final int QUEUE_CAPACITY = 1;
+
+    /**
+     * Receives the result of a load on the main thread, unless the load was superseded.
+     */
+    public interface Callback {
+        /**
+         * Called with the resized image. The callback takes ownership of the bitmap.
+         */
+        void onImageLoaded(Bitmap bitmap);
+
+        void onImageFailed();
+    }
+
+    private final BitmapPool pool;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    /**
+     * Creates a loader that stops when the given owner is destroyed.
+     */
+    public ImageLoader(LifecycleOwner owner, BitmapPool pool) {
+        this.pool = pool;
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Decodes the source sampled for the targeted size, resizes it to fit and delivers it to the
+     * callback. Supersedes every earlier load.
+     */
+    public void load(BitmapDecoder.StreamOpener opener, Pair<Integer, Integer> targetedSize,
+                     Callback callback) {
+        final int token = generation.incrementAndGet();
+        executor.execute(() -> {
+            if (!isCurrent(token)) {
+                return;
+            }
+            long decode = StageMetrics.begin(StageMetrics.Stage.DECODE);
+            Bitmap decoded = BitmapDecoder.decodeSampled(opener,
+                    targetedSize.first, targetedSize.second, pool);
+            StageMetrics.end(StageMetrics.Stage.DECODE, decode);
+            if (decoded == null) {
+                deliverFailure(token, callback);
+                return;
+            }
+            if (!isCurrent(token)) {
+                pool.put(decoded);
+                return;
+            }
+
+            long resize = StageMetrics.begin(StageMetrics.Stage.RESIZE);
+            Bitmap resized = MainActivity.resizeBitmap(decoded, targetedSize, pool);
+            StageMetrics.end(StageMetrics.Stage.RESIZE, resize);
+            if (resized != decoded) {
+                pool.put(decoded);
+            }
+            if (!isCurrent(token)) {
+                pool.put(resized);
+                return;
+            }
+            mainHandler.post(() -> {
+                if (isCurrent(token)) {
+                    callback.onImageLoaded(resized);
+                } else {
+                    pool.put(resized);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops every pending and running load.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private boolean isCurrent(int token) {
+        return generation.get() == token;
+    }
+
+    private void deliverFailure(int token, Callback callback) {
+        mainHandler.post(() -> {
+            if (isCurrent(token)) {
+                callback.onImageFailed();
+            }
+        });
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            cancel();
+            executor.shutdownNow();
+            Log.d(TAG, "Image loader stopped");
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Converts bitmaps to NV21 for the detectors, once per image.
+ * <p>
+ * <p>{@link com.google.mlkit.vision.common.InputImage#fromBitmap} leaves the conversion to each
+ * detector, on every call. Here the pixels are converted two rows at a time into a direct buffer
+ * from a {@link ByteBufferPool}, and the results for the last few bitmaps are kept as long as their
+ * pixels do not change. Text recognition and face detection on the same image share one
+ * conversion. Frames of a stream, whose pixels are new every time, are converted with
+ * {@link #prepareUncached} so they never push a still image out.
+ */
+public class InputImagePreparer implements LifecycleEventObserver {
+    private static final String TAG = "InputImagePreparer";
+
+    /**
+     * Receives a prepared image on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param image the converted image, which the callback must release, or null if the
+         *              bitmap could not be converted
+         */
+        void onPrepared(Nv21Image image);
+    }
+
+    private static final class Prepared {
+        final Bitmap bitmap;
+        final int generationId;
+        final Nv21Image image;
+
+        /**
+         * @param generationId generation of the bitmap read before its pixels were converted
+         */
+        Prepared(Bitmap bitmap, int generationId, Nv21Image image) {
+            this.bitmap = bitmap;
+            this.generationId = generationId;
+            this.image = image;
+        }
+    }
+
+    private final ByteBufferPool pool;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG));
+
+    private final int maxImages;
+    // Guarded by this. Recently converted bitmaps, least recent first. Each holds a reference to
+    // its image as long as it is kept.
+    private final List<Prepared> prepared = new ArrayList<>();
+    // Two rows of pixels, their luma, and their chroma.
+    private int[] pixelRows = new int[0];
+    private byte[] lumaRows = new byte[0];
+    private byte[] chromaRow = new byte[0];
+
+    private long conversionCount;
+    private long reuseCount;
+    private long conversionNanos;
+
+    /**
+     * Creates a preparer that stops when the given owner is destroyed.
+     *
+     * @param maxImages number of converted images kept, and of released buffers pooled
+     */
+    public InputImagePreparer(LifecycleOwner owner, int maxImages) {
+        this.maxImages = maxImages;
+        this.pool = new ByteBufferPool(maxImages);
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Converts the bitmap in the background, unless it was converted recently. The bitmap must not
+     * change until the callback ran.
+     */
+    public void prepare(Bitmap bitmap, Callback callback) {
+        if (executor.isShutdown()) {
+            // The owner is gone, and with it whoever would run the detection.
+            return;
+        }
+        executor.execute(() -> {
+            Nv21Image image = prepareNow(bitmap);
+            mainHandler.post(() -> callback.onPrepared(image));
+        });
+    }
+
+    /**
+     * Converts the bitmap in the background ahead of a detection, so the detection does not wait.
+     * The bitmap is read until {@code done} runs on the main thread, so it must not be changed or
+     * reused before.
+     */
+    public void preload(Bitmap bitmap, Runnable done) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            Nv21Image image = prepareNow(bitmap);
+            if (image != null) {
+                image.release();
+            }
+            mainHandler.post(done);
+        });
+    }
+
+    /**
+     * Converts the bitmap on the calling thread, unless it was converted recently.
+     *
+     * @return the converted image, which the caller must release, or null if the bitmap could not
+     * be converted
+     */
+    public synchronized Nv21Image prepareNow(Bitmap bitmap) {
+        for (int i = 0; i < prepared.size(); i++) {
+            Prepared entry = prepared.get(i);
+            if (entry.bitmap != bitmap) {
+                continue;
+            }
+            prepared.remove(i);
+            if (entry.generationId == bitmap.getGenerationId()) {
+                prepared.add(entry);
+                reuseCount++;
+                return entry.image.retain();
+            }
+            // The pixels changed since.
+            entry.image.release();
+            break;
+        }
+
+        // Read first, so pixels changed during the conversion make the result stale.
+        int generationId = bitmap.getGenerationId();
+        Nv21Image image = convertMeasured(bitmap);
+        if (image == null) {
+            return null;
+        }
+        prepared.add(new Prepared(bitmap, generationId, image));
+        if (prepared.size() > maxImages) {
+            prepared.remove(0).image.release();
+        }
+        return image.retain();
+    }
+
+    /**
+     * Converts the bitmap on the calling thread without looking it up or keeping it, for bitmaps
+     * that are only converted once, like the frames of a stream. The buffer still comes from and
+     * goes back to the pool.
+     *
+     * @return the converted image, which the caller must release, or null if the bitmap could not
+     * be converted
+     */
+    public synchronized Nv21Image prepareUncached(Bitmap bitmap) {
+        return convertMeasured(bitmap);
+    }
+
+    private Nv21Image convertMeasured(Bitmap bitmap) {
+        long token = StageMetrics.begin(StageMetrics.Stage.INPUT_IMAGE);
+        long start = SystemClock.elapsedRealtimeNanos();
+        Nv21Image image = convert(bitmap);
+        conversionNanos += SystemClock.elapsedRealtimeNanos() - start;
+        StageMetrics.end(StageMetrics.Stage.INPUT_IMAGE, token);
+        if (image != null) {
+            conversionCount++;
+        }
+        return image;
+    }
+
+    // Package private so tests can change the bitmap while it is converted.
+    Nv21Image convert(Bitmap bitmap) {
+        // Chroma covers 2x2 blocks, an odd last column or row is left out.
+        int width = bitmap.getWidth() & ~1;
+        int height = bitmap.getHeight() & ~1;
+        if (width == 0 || height == 0 || bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            Log.w(TAG, "Unable to convert " + bitmap);
+            return null;
+        }
+        if (pixelRows.length < width * 2) {
+            pixelRows = new int[width * 2];
+            lumaRows = new byte[width * 2];
+            chromaRow = new byte[width];
+        }
+
+        ByteBuffer buffer = pool.acquire(Nv21Image.bufferSize(width, height));
+        int chromaOffset = width * height;
+        for (int y = 0; y < height; y += 2) {
+            bitmap.getPixels(pixelRows, 0, width, 0, y, width, 2);
+            encodeRowPair(pixelRows, width, lumaRows, chromaRow);
+            buffer.position(y * width);
+            buffer.put(lumaRows, 0, width * 2);
+            buffer.position(chromaOffset + y / 2 * width);
+            buffer.put(chromaRow, 0, width);
+        }
+        buffer.position(0);
+        return new Nv21Image(buffer, width, height, pool);
+    }
+
+    /**
+     * Converts two rows of ARGB pixels of an even width to the BT.601 luma of both rows and one row
+     * of V and U pairs, each computed from the average color of a 2x2 block.
+     *
+     * @param pixels the two rows, one after the other
+     * @param luma   receives the luma of both rows, one after the other
+     * @param chroma receives V and U of every block
+     */
+    static void encodeRowPair(int[] pixels, int width, byte[] luma, byte[] chroma) {
+        for (int x = 0; x < width; x += 2) {
+            int sumRed = 0;
+            int sumGreen = 0;
+            int sumBlue = 0;
+            for (int i = x; i < x + 2 * width; i += width) {
+                for (int j = i; j < i + 2; j++) {
+                    int red = (pixels[j] >> 16) & 0xff;
+                    int green = (pixels[j] >> 8) & 0xff;
+                    int blue = pixels[j] & 0xff;
+                    luma[j] = (byte) (((66 * red + 129 * green + 25 * blue + 128) >> 8) + 16);
+                    sumRed += red;
+                    sumGreen += green;
+                    sumBlue += blue;
+                }
+            }
+            int red = (sumRed + 2) >> 2;
+            int green = (sumGreen + 2) >> 2;
+            int blue = (sumBlue + 2) >> 2;
+            chroma[x] = (byte) (((112 * red - 94 * green - 18 * blue + 128) >> 8) + 128);
+            chroma[x + 1] = (byte) (((-38 * red - 74 * green + 112 * blue + 128) >> 8) + 128);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "InputImagePreparer{conversions=%d, reuses=%d, meanConversion=%.2f ms, %s}",
+                conversionCount, reuseCount,
+                conversionCount == 0 ? 0 : conversionNanos / 1e6 / conversionCount, pool);
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            executor.shutdownNow();
+            synchronized (this) {
+                for (Prepared entry : prepared) {
+                    entry.image.release();
+                }
+                prepared.clear();
+                Log.d(TAG, toString());
+            }
+            pool.clear();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.codelabs_vision_sef;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The graphics of one kind of result in a {@link GraphicOverlay}, matched to the items of every new
+ * result by a stable key.
+ * <p>
+ * <p>A graphic whose key is in the new result again is updated in place, graphics are only created
+ * for new keys and only removed for keys that are gone, all in one overlay transaction. Graphics
+ * of other kinds stay in the overlay, so results of different detectors can be updated
+ * independently.
+ * <p>
+ * <p>Counts the graphics created, reused and removed, here and in the {@link StageMetrics}.
+ * <p>
+ * <p>Must be used on the thread that draws the overlay.
+ *
+ * @param <T> the type of the result items
+ * @param <G> the type of their graphics
+ */
+public class KeyedGraphics<T, G extends GraphicOverlay.Graphic> {
+    /**
+     * Matches items to graphics and keeps the graphics up to date.
+     */
+    public interface Binder<T, G extends GraphicOverlay.Graphic> {
+        /**
+         * Returns the key of an item, equal for the items of successive results that share a
+         * graphic. Called once for every item of a result, in order, before the item is bound.
+         */
+        Object keyOf(T item);
+
+        /**
+         * Creates the graphic of an item with a new key.
+         */
+        G create(GraphicOverlay overlay, T item);
+
+        /**
+         * Updates the graphic of the previous item with the same key to show the given item.
+         */
+        void update(G graphic, T item);
+    }
+
+    private final GraphicOverlay overlay;
+    private final Binder<T, G> binder;
+    private Map<Object, G> graphics = new HashMap<>();
+
+    private long createdCount;
+    private long reusedCount;
+    private long removedCount;
+
+    public KeyedGraphics(GraphicOverlay overlay, Binder<T, G> binder) {
+        this.overlay = overlay;
+        this.binder = binder;
+    }
+
+    /**
+     * Shows the items of a new result instead of those of the previous one.
+     *
+     * @return the graphic of every item, in the order of the items
+     */
+    public List<G> update(List<T> items) {
+        GraphicOverlay.Transaction transaction = overlay.beginTransaction();
+        List<G> result = update(items, transaction);
+        transaction.commit();
+        return result;
+    }
+
+    /**
+     * Same as {@link #update(List)}, but records the additions and removals in a transaction, to
+     * be committed together with other changes.
+     */
+    public List<G> update(List<T> items, GraphicOverlay.Transaction transaction) {
+        Map<Object, G> next = new HashMap<>();
+        List<G> result = new ArrayList<>(items.size());
+        int created = 0;
+        int reused = 0;
+        for (T item : items) {
+            Object key = binder.keyOf(item);
+            G graphic = graphics.remove(key);
+            if (graphic == null) {
+                graphic = binder.create(overlay, item);
+                created++;
+            } else {
+                binder.update(graphic, item);
+                reused++;
+            }
+            if (next.containsKey(key)) {
+                // Items of one result with the same key each keep a graphic, matched by nothing.
+                key = new Object();
+            }
+            next.put(key, graphic);
+            // Adds the graphic back if the overlay was cleared behind our back, else does nothing.
+            transaction.add(graphic);
+            result.add(graphic);
+        }
+        for (G graphic : graphics.values()) {
+            transaction.remove(graphic);
+        }
+        int removed = graphics.size();
+        graphics = next;
+
+        createdCount += created;
+        reusedCount += reused;
+        removedCount += removed;
+        StageMetrics.add(StageMetrics.Counter.GRAPHICS_CREATED, created);
+        StageMetrics.add(StageMetrics.Counter.GRAPHICS_REUSED, reused);
+        StageMetrics.add(StageMetrics.Counter.GRAPHICS_REMOVED, removed);
+        return result;
+    }
+
+    /**
+     * Removes every graphic from the overlay and forgets it.
+     */
+    public void clear() {
+        update(Collections.<T>emptyList());
+    }
+
+    /**
+     * Same as {@link #clear()}, recording the removals in a transaction.
+     */
+    public void clear(GraphicOverlay.Transaction transaction) {
+        update(Collections.<T>emptyList(), transaction);
+    }
+
+    /**
+     * Returns the graphic of the given key in the last result, or null.
+     */
+    public G get(Object key) {
+        return graphics.get(key);
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getReusedCount() {
+        return reusedCount;
+    }
+
+    public long getRemovedCount() {
+        return removedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyedGraphics{created=" + createdCount + ", reused=" + reusedCount
+                + ", removed=" + removedCount + "}";
+    }
+}
@@ -17,50 +17,111 @@ package com.example.codelabs_vision_sef;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
-import android.text.TextPaint;
+import android.graphics.RectF;
 
 import java.util.List;
 
 /**
  * Graphic instance for rendering image labels.
+ * <p>
+ * <p>The layout of the labels is computed once when they are set and published as an immutable
+ * {@link Layout}, so drawing only reads primitive arrays and never contends with updates.
  */
 public class LabelGraphic extends GraphicOverlay.Graphic {
 
-    private final Paint textPaint;
-    private final Paint bgPaint;
+    private static final float TEXT_SIZE = 60.0f;
+    private static final float LINE_HEIGHT = 62.0f;
+    // Translucent black.
+    private static final int BACKGROUND_ALPHA = 50;
+
+    // Shared by every instance. Only ever read after this class is initialized.
+    private static final Paint TEXT_PAINT = new Paint();
+    private static final Paint BACKGROUND_PAINT = new Paint();
+
+    static {
+        TEXT_PAINT.setColor(Color.WHITE);
+        TEXT_PAINT.setTextSize(TEXT_SIZE);
+
+        BACKGROUND_PAINT.setColor(Color.BLACK);
+        BACKGROUND_PAINT.setAlpha(BACKGROUND_ALPHA);
+    }
+
     private final GraphicOverlay overlay;
 
-    private List<String> labels;
+    private volatile Layout layout;
+
+    /**
+     * Labels with their backgrounds and baselines, relative to the origin of the first label.
+     */
+    private static final class Layout {
+        final String[] labels;
+        // Left, top, right and bottom of the background of each label.
+        final float[] backgrounds;
+        final float[] baselines;
+
+        Layout(String[] labels, float[] backgrounds, float[] baselines) {
+            this.labels = labels;
+            this.backgrounds = backgrounds;
+            this.baselines = baselines;
+        }
+    }
 
     LabelGraphic(GraphicOverlay overlay, List<String> labels) {
         super(overlay);
         this.overlay = overlay;
-        this.labels = labels;
-        textPaint = new Paint();
-        textPaint.setColor(Color.WHITE);
-        textPaint.setTextSize(60.0f);
-        bgPaint = new Paint();
-        bgPaint.setColor(Color.BLACK);
-        bgPaint.setAlpha(50);
+        setLabels(labels);
     }
 
+    /**
+     * Replaces the labels, laying them out once for all following draws.
+     */
+    public void setLabels(List<String> labels) {
+        String[] texts = labels.toArray(new String[0]);
+        float[] backgrounds = new float[texts.length * 4];
+        float[] baselines = new float[texts.length];
+
+        Paint.FontMetrics fontMetrics = TEXT_PAINT.getFontMetrics();
+        float y = 0;
+        for (int i = 0; i < texts.length; i++) {
+            backgrounds[i * 4] = 0;
+            backgrounds[i * 4 + 1] = y + fontMetrics.top;
+            backgrounds[i * 4 + 2] = TEXT_PAINT.measureText(texts[i]);
+            backgrounds[i * 4 + 3] = y + fontMetrics.bottom;
+            baselines[i] = y;
+            y = y - LINE_HEIGHT;
+        }
+        layout = new Layout(texts, backgrounds, baselines);
+        postInvalidate();
+    }
+
+    /**
+     * Returns the union of the label backgrounds, which enclose the label texts.
+     */
     @Override
-    public synchronized void draw(Canvas canvas) {
+    public boolean getBounds(RectF outBounds) {
+        Layout layout = this.layout;
         float x = overlay.getWidth() / 4.0f;
         float y = overlay.getHeight() / 4.0f;
 
-        for (String label : labels) {
-            drawTextWithBackground(label, x, y, new TextPaint(textPaint), bgPaint, canvas);
-            y = y - 62.0f;
+        outBounds.setEmpty();
+        for (int i = 0; i < layout.labels.length; i++) {
+            outBounds.union(x + layout.backgrounds[i * 4], y + layout.backgrounds[i * 4 + 1],
+                    x + layout.backgrounds[i * 4 + 2], y + layout.backgrounds[i * 4 + 3]);
         }
+        return true;
     }
 
-    private void drawTextWithBackground(String text, float x, float y, TextPaint paint,
-                                        Paint bgPaint, Canvas canvas) {
-        Paint.FontMetrics fontMetrics = paint.getFontMetrics();
-        canvas.drawRect(new Rect((int) (x), (int) (y + fontMetrics.top),
-                (int) (x + paint.measureText(text)), (int) (y + fontMetrics.bottom)), bgPaint);
-        canvas.drawText(text, x, y, textPaint);
+    @Override
+    public void draw(Canvas canvas) {
+        Layout layout = this.layout;
+        float x = overlay.getWidth() / 4.0f;
+        float y = overlay.getHeight() / 4.0f;
+
+        for (int i = 0; i < layout.labels.length; i++) {
+            canvas.drawRect(x + layout.backgrounds[i * 4], y + layout.backgrounds[i * 4 + 1],
+                    x + layout.backgrounds[i * 4 + 2], y + layout.backgrounds[i * 4 + 3],
+                    BACKGROUND_PAINT);
+            canvas.drawText(layout.labels[i], x, y + layout.baselines[i], TEXT_PAINT);
+        }
     }
 }
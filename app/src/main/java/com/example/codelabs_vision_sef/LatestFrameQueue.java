@@ -0,0 +1,64 @@
+package com.example.codelabs_vision_sef;
+
+/**
+ * A blocking queue that holds at most one item. Offering an item while another one is pending
+ * replaces it, so a slow consumer always gets the most recent item and never builds a backlog.
+ */
+public class LatestFrameQueue<T> {
+    private T pending;
+    private long offeredCount;
+    private long droppedCount;
+
+    /**
+     * Makes the item the pending one.
+     *
+     * @return the item it replaced, which was dropped, or null
+     */
+    public synchronized T offer(T item) {
+        T dropped = pending;
+        pending = item;
+        offeredCount++;
+        if (dropped != null) {
+            droppedCount++;
+        }
+        notifyAll();
+        return dropped;
+    }
+
+    /**
+     * Waits for a pending item and removes it.
+     */
+    public synchronized T take() throws InterruptedException {
+        while (pending == null) {
+            wait();
+        }
+        T item = pending;
+        pending = null;
+        return item;
+    }
+
+    /**
+     * Removes the pending item without waiting.
+     *
+     * @return the pending item, or null if there was none
+     */
+    public synchronized T poll() {
+        T item = pending;
+        pending = null;
+        return item;
+    }
+
+    /**
+     * Returns how many items were offered.
+     */
+    public synchronized long getOfferedCount() {
+        return offeredCount;
+    }
+
+    /**
+     * Returns how many items were replaced before they were taken.
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
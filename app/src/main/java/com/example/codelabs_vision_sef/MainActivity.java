@@ -4,8 +4,12 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.AssetManager;
+import android.hardware.camera2.CameraCharacteristics;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Bundle;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -14,37 +18,41 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import android.util.Log;
 import android.util.Pair;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
-import com.google.mlkit.vision.text.Text;
-import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity implements AdapterView.OnItemSelectedListener {
     private static final String TAG = "MainActivity";
     private ImageView mImageView;
     private Button mTextButton;
     private Button mFaceButton;
+    private Button mBothButton;
+    private Button mStreamButton;
+    private TextView mStatsText;
     private Bitmap mSelectedImage;
     private GraphicOverlay mGraphicOverlay;
     // Max width (portrait mode)
@@ -63,32 +71,175 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
     private static final int DIM_PIXEL_SIZE = 3;
     private static final int DIM_IMG_SIZE_X = 224;
     private static final int DIM_IMG_SIZE_Y = 224;
+    /**
+     * Paint used to draw resized bitmaps, with the same filtering as Bitmap.createScaledBitmap.
+     */
+    private static final Paint RESIZE_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Share of the app heap that decoded and resized bitmaps may keep pooled for reuse.
+     */
+    private static final int BITMAP_POOL_HEAP_DIVISOR = 8;
+    /**
+     * Rate at which the streaming mode replays the test images.
+     */
+    private static final int STREAM_FRAMES_PER_SECOND = 30;
+    /**
+     * Frames the streaming mode lets the detectors work on at the same time.
+     */
+    private static final int STREAM_MAX_IN_FLIGHT = 2;
+    /**
+     * Detection latency above which the streaming mode falls back to landmarks only.
+     */
+    private static final long STREAM_LATENCY_BUDGET_MS = 200;
+    /**
+     * Detection results kept in memory, and bytes of them kept on disk.
+     */
+    private static final int CACHE_MEMORY_ENTRIES = 16;
+    private static final long CACHE_DISK_BYTES = 4 * 1024 * 1024;
+    /**
+     * Tiles of the full resolution text recognition, started by a long press on "Find text".
+     */
+    private static final int TEXT_TILE_SIZE = 1024;
+    private static final int TEXT_TILE_OVERLAP = 128;
+    private static final int TEXT_TILE_PARALLELISM = 2;
+    /**
+     * Converted images kept for reuse, and released conversion buffers pooled: the selected image,
+     * and the frames the streaming mode has in flight, which are never kept.
+     */
+    private static final int INPUT_BUFFER_COUNT = 1 + STREAM_MAX_IN_FLIGHT;
+    /**
+     * Distance in view pixels from a word at which a tap still selects it.
+     */
+    private static final float TEXT_TAP_SLOP = 24;
+    /**
+     * Options of the text recognizer, also used by the tiled and the streaming recognition.
+     */
+    private static final TextRecognizerOptions TEXT_OPTIONS = TextRecognizerOptions.DEFAULT_OPTIONS;
+    /**
+     * Name of the text recognizer in the detection cache. The latin recognizer has no settings;
+     * rename it if {@link #TEXT_OPTIONS} changes.
+     */
+    private static final String TEXT_DETECTOR = "text-latin";
+    /**
+     * Settings of the face detector used by "Find face contour".
+     */
+    private static final FaceDetectorSettings FACE_CONTOUR = new FaceDetectorSettings.Builder()
+            .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+            .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
+            .build();
+    /**
+     * Cheaper face detector settings the streaming mode falls back to when it can not keep up.
+     * Tracking only assigns ids without contours, so it is enabled here only.
+     */
+    private static final FaceDetectorSettings FACE_LANDMARK = new FaceDetectorSettings.Builder()
+            .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+            .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+            .enableTracking()
+            .build();
 
     private ActivityResultLauncher<String> mGetImage;
+    private final BitmapPool mBitmapPool =
+            new BitmapPool(Runtime.getRuntime().maxMemory() / BITMAP_POOL_HEAP_DIVISOR);
+    // Number of detections and conversions reading mSelectedImage, it can not be reused while they
+    // run.
+    private int mDetectionsInFlight;
+    private DetectorRegistry mDetectorRegistry;
+    private ImageLoader mImageLoader;
+    private StreamingDetector mStreamingDetector;
+    private ResultOverlay mResults;
+    private DetectionCache mDetectionCache;
+    private TiledTextRecognizer mTiledTextRecognizer;
+    private InputImagePreparer mInputPreparer;
+    private CombinedAnalyzer mCombinedAnalyzer;
+    // Source of the selected image, to read it again at full resolution.
+    private BitmapDecoder.StreamOpener mSelectedSource;
+    private final ImageLoader.Callback mImageLoaded = new ImageLoader.Callback() {
+        @Override
+        public void onImageLoaded(Bitmap bitmap) {
+            showSelectedImage(bitmap);
+        }
+
+        @Override
+        public void onImageFailed() {
+            showToast("Unable to decode image");
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        mDetectorRegistry = new DetectorRegistry(this);
+        mImageLoader = new ImageLoader(this, mBitmapPool);
+        mInputPreparer = new InputImagePreparer(this, INPUT_BUFFER_COUNT);
+        mDetectionCache = new DetectionCache(this, new File(getCacheDir(), "detections"),
+                CACHE_MEMORY_ENTRIES, CACHE_DISK_BYTES);
+        mTiledTextRecognizer = new TiledTextRecognizer(this,
+                mDetectorRegistry.getTextRecognizer(TEXT_OPTIONS),
+                TEXT_TILE_SIZE, TEXT_TILE_OVERLAP, TEXT_TILE_PARALLELISM);
+        mCombinedAnalyzer = new CombinedAnalyzer(
+                mDetectorRegistry.getTextRecognizer(TEXT_OPTIONS),
+                mDetectorRegistry.getFaceDetector(FACE_CONTOUR.getOptions()));
 
         mImageView = findViewById(R.id.image_view);
 
         mTextButton = findViewById(R.id.button_text);
         mFaceButton = findViewById(R.id.button_face);
+        mBothButton = findViewById(R.id.button_both);
+        mStreamButton = findViewById(R.id.button_stream);
+        mStatsText = findViewById(R.id.stats_text);
 
         mGraphicOverlay = findViewById(R.id.graphic_overlay);
+        mResults = new ResultOverlay(mGraphicOverlay);
+        mGraphicOverlay.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View view, MotionEvent event) {
+                if (!mResults.hasText()) {
+                    return false;
+                }
+                if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+                    selectTextAt(event.getX(), event.getY());
+                    view.performClick();
+                }
+                return true;
+            }
+        });
         mTextButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 runTextRecognition();
             }
         });
+        mTextButton.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                runTiledTextRecognition();
+                return true;
+            }
+        });
         mFaceButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 runFaceContourDetection();
             }
         });
+        mBothButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                runCombinedAnalysis();
+            }
+        });
+        mStreamButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (mStreamingDetector != null) {
+                    stopStreaming();
+                } else {
+                    startStreaming();
+                }
+            }
+        });
         Spinner dropdown = findViewById(R.id.spinner);
         String[] items = new String[]{"Test Image 1 (Text)", "Test Image 2 (Face)", "Open local image file"};
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout
@@ -98,97 +249,345 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
 
         mGetImage = registerForActivityResult(new ActivityResultContracts.GetContent(), uri -> {
             if(uri != null){
-                try {
-                    ContentResolver content = getContentResolver();
-                    mSelectedImage = BitmapFactory.decodeStream(content.openInputStream(uri));
-
-                    // Get the dimensions of the View
-                    Pair<Integer, Integer> viewSize = getTargetedWidthHeight();
-                    mSelectedImage = resizeBitmap(mSelectedImage, viewSize);
-                    mImageView.setImageBitmap(mSelectedImage);
-                } catch (FileNotFoundException e) {
-                    Log.e("Decode Image", "************************* "+e.toString());
-                }
+                ContentResolver content = getContentResolver();
+
+                // Get the dimensions of the View
+                Pair<Integer, Integer> viewSize = getTargetedWidthHeight();
+                loadImage(() -> content.openInputStream(uri), viewSize);
             }
         });
     }
 
     private void runTextRecognition() {
-        InputImage image = InputImage.fromBitmap(mSelectedImage, 0);
-        TextRecognizer recognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        if (mSelectedImage == null) {
+            // The first image is still loading.
+            return;
+        }
+        Bitmap selectedImage = mSelectedImage;
         mTextButton.setEnabled(false);
-        recognizer.process(image).addOnSuccessListener(texts -> {
+        mDetectionsInFlight++;
+        mDetectionCache.findText(selectedImage, TEXT_DETECTOR, (key, cached) -> {
+            Log.d(TAG, mDetectionCache.toString());
+            if (cached != null) {
+                mTextButton.setEnabled(true);
+                mDetectionsInFlight--;
+                processTextRecognitionResult(cached);
+                return;
+            }
+            mInputPreparer.prepare(selectedImage, input -> recognizeText(key, input));
+        });
+    }
+
+    /**
+     * Recognizes the text of the converted selected image and caches the result under the key.
+     */
+    private void recognizeText(DetectionCache.Key key, Nv21Image input) {
+        if (input == null) {
             mTextButton.setEnabled(true);
-            processTextRecognitionResult(texts);
+            mDetectionsInFlight--;
+            return;
+        }
+        TextRecognizer recognizer =
+                mDetectorRegistry.getTextRecognizer(TEXT_OPTIONS);
+        long recognition = StageMetrics.beginAsync(StageMetrics.Stage.TEXT_RECOGNITION);
+        recognizer.process(input.newInputImage()).addOnSuccessListener(texts -> {
+            StageMetrics.endAsync(StageMetrics.Stage.TEXT_RECOGNITION, recognition);
+            mTextButton.setEnabled(true);
+            long processing = StageMetrics.begin(StageMetrics.Stage.TEXT_RESULT);
+            RecognizedText result = RecognizedText.fromText(texts);
+            mDetectionCache.putText(key, result);
+            processTextRecognitionResult(result);
+            StageMetrics.end(StageMetrics.Stage.TEXT_RESULT, processing);
         }).addOnFailureListener(exception -> {
+            StageMetrics.endAsync(StageMetrics.Stage.TEXT_RECOGNITION, recognition);
             mTextButton.setEnabled(true);
             exception.printStackTrace();
+        }).addOnCompleteListener(task -> {
+            input.release();
+            mDetectionsInFlight--;
         });
     }
 
-    private void processTextRecognitionResult(Text texts) {
-        List<Text.TextBlock> blocks = texts.getTextBlocks();
-        if(blocks.size() == 0){
+    private void processTextRecognitionResult(RecognizedText texts) {
+        if(texts.getCount() == 0){
             showToast("No text found");
             return;
         }
+        showInSelectedImageCoordinates();
 
-        mGraphicOverlay.clear();
+        // All elements are drawn by a single layer instead of one graphic each.
+        mResults.show(texts, null);
+    }
 
-        /* OLD 'for' structure
-        for(int i=0; i<blocks.size(); i++){
-            List<Text.Line> lines = blocks.get(i).getLines();
-            for (int j=0; j<lines.size(); j++){
-                List<Text.Element> elements = lines.get(j).getElements();
-                for (int k=0; k<elements.size(); k++){
-                    GraphicOverlay.Graphic textGraphic = new TextGraphic(mGraphicOverlay, elements.get(k));
-                    mGraphicOverlay.add(textGraphic);
-                }
-            }
+    /**
+     * Highlights the word at a point of the overlay and shows its text.
+     */
+    private void selectTextAt(float viewX, float viewY) {
+        String word = mResults.selectTextAt(viewX, viewY, TEXT_TAP_SLOP);
+        if (word != null) {
+            showToast(word);
         }
-        */
-
-        //New 'forEach' structure
-        blocks.forEach(lines -> {
-            lines.getLines().forEach(elements -> {
-                elements.getElements().forEach(elementText ->{
-                    GraphicOverlay.Graphic textGraphic = new TextGraphic(mGraphicOverlay, elementText);
-                    mGraphicOverlay.add(textGraphic);
-                });
-            });
-        });
     }
 
     private void runFaceContourDetection() {
-        InputImage image = InputImage.fromBitmap(mSelectedImage, 0);
-        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
-                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
-                .build();
-
+        if (mSelectedImage == null) {
+            // The first image is still loading.
+            return;
+        }
+        Bitmap selectedImage = mSelectedImage;
         mFaceButton.setEnabled(false);
-        FaceDetector detector = FaceDetection.getClient(options);
-        detector.process(image).addOnSuccessListener(faces -> {
+        mDetectionsInFlight++;
+        mDetectionCache.findFaces(selectedImage, FACE_CONTOUR.getName(), (key, cached) -> {
+            Log.d(TAG, mDetectionCache.toString());
+            if (cached != null) {
+                mFaceButton.setEnabled(true);
+                mDetectionsInFlight--;
+                processFaceContourDetectionResult(cached);
+                return;
+            }
+            mInputPreparer.prepare(selectedImage, input -> detectFaces(key, input));
+        });
+    }
+
+    /**
+     * Detects the faces of the converted selected image and caches the result under the key.
+     */
+    private void detectFaces(DetectionCache.Key key, Nv21Image input) {
+        if (input == null) {
             mFaceButton.setEnabled(true);
-            processFaceContourDetectionResult(faces);
+            mDetectionsInFlight--;
+            return;
+        }
+        FaceDetector detector = mDetectorRegistry.getFaceDetector(FACE_CONTOUR.getOptions());
+        long detection = StageMetrics.beginAsync(StageMetrics.Stage.FACE_DETECTION);
+        detector.process(input.newInputImage()).addOnSuccessListener(faces -> {
+            StageMetrics.endAsync(StageMetrics.Stage.FACE_DETECTION, detection);
+            mFaceButton.setEnabled(true);
+            long processing = StageMetrics.begin(StageMetrics.Stage.FACE_RESULT);
+            List<FaceData> result = FaceData.fromFaces(faces);
+            mDetectionCache.putFaces(key, result);
+            processFaceContourDetectionResult(result);
+            StageMetrics.end(StageMetrics.Stage.FACE_RESULT, processing);
         }).addOnFailureListener(exception -> {
+            StageMetrics.endAsync(StageMetrics.Stage.FACE_DETECTION, detection);
             mFaceButton.setEnabled(true);
             exception.printStackTrace();
+        }).addOnCompleteListener(task -> {
+            input.release();
+            mDetectionsInFlight--;
         });
     }
 
-    private void processFaceContourDetectionResult(List<Face> faces) {
+    private void processFaceContourDetectionResult(List<FaceData> faces) {
         //Task completed successfully
         if(faces.size() == 0){
             showToast("No faces found");
             return;
         }
 
+        showInSelectedImageCoordinates();
+        // Faces seen before keep their graphic.
+        mResults.show(null, faces);
+    }
+
+    /**
+     * Recognizes text and detects faces in the selected image at the same time, on one converted
+     * image, and shows both results in one overlay update. Their latencies are shown on top.
+     */
+    private void runCombinedAnalysis() {
+        if (mSelectedImage == null) {
+            // The first image is still loading.
+            return;
+        }
+        Bitmap selectedImage = mSelectedImage;
+        mBothButton.setEnabled(false);
+        mDetectionsInFlight++;
+        mDetectionCache.findText(selectedImage, TEXT_DETECTOR, (textKey, cachedText) ->
+                mDetectionCache.findFaces(selectedImage, FACE_CONTOUR.getName(),
+                        (faceKey, cachedFaces) -> {
+                    Log.d(TAG, mDetectionCache.toString());
+                    if (cachedText != null && cachedFaces != null) {
+                        mBothButton.setEnabled(true);
+                        mDetectionsInFlight--;
+                        processCombinedResult(cachedText, cachedFaces);
+                        return;
+                    }
+                    mInputPreparer.prepare(selectedImage, input ->
+                            analyzeBoth(textKey, cachedText, faceKey, cachedFaces, input));
+                }));
+    }
+
+    /**
+     * Runs the detectors without a cached result on the converted selected image and caches what
+     * they find.
+     */
+    private void analyzeBoth(DetectionCache.Key textKey, RecognizedText cachedText,
+                             DetectionCache.Key faceKey, List<FaceData> cachedFaces,
+                             Nv21Image input) {
+        if (input == null) {
+            mBothButton.setEnabled(true);
+            mDetectionsInFlight--;
+            return;
+        }
+        mCombinedAnalyzer.analyze(input, cachedText, cachedFaces, result -> {
+            mBothButton.setEnabled(true);
+            mDetectionsInFlight--;
+            Log.d(TAG, "Combined analysis: " + result);
+            mStatsText.setText(result.toString());
+            mStatsText.setVisibility(View.VISIBLE);
+            if (cachedText == null && result.text != null) {
+                mDetectionCache.putText(textKey, result.text);
+            }
+            if (cachedFaces == null && result.faces != null) {
+                mDetectionCache.putFaces(faceKey, result.faces);
+            }
+            processCombinedResult(result.text, result.faces);
+        });
+    }
+
+    /**
+     * Shows the text layer and the faces together, replacing whatever the overlay showed. A null
+     * result is left out.
+     */
+    private void processCombinedResult(RecognizedText texts, List<FaceData> faces) {
+        boolean hasText = texts != null && texts.getCount() > 0;
+        if (!hasText && (faces == null || faces.isEmpty())) {
+            showToast("No text or faces found");
+            return;
+        }
+        showInSelectedImageCoordinates();
+        mResults.show(hasText ? texts : null, faces);
+    }
+
+    /**
+     * Replays the test images as a stream and runs both detectors on every frame the detection
+     * can keep up with.
+     */
+    private void startStreaming() {
+        AssetManager assetManager = getAssets();
+        Pair<Integer, Integer> viewSize = getTargetedWidthHeight();
+        FrameSource source = new ReplayFrameSource(
+                Arrays.asList(
+                        () -> assetManager.open("Please_walk_on_the_grass.jpg"),
+                        () -> assetManager.open("grace_hopper.jpg")),
+                viewSize.first, viewSize.second, STREAM_FRAMES_PER_SECOND,
+                CameraCharacteristics.LENS_FACING_BACK, mBitmapPool);
+        mStreamingDetector = new StreamingDetector(source,
+                mDetectorRegistry.getFaceDetector(FACE_CONTOUR.getOptions()),
+                mDetectorRegistry.getFaceDetector(FACE_LANDMARK.getOptions()),
+                mDetectorRegistry.getTextRecognizer(TEXT_OPTIONS),
+                mInputPreparer,
+                new DetectionScheduler(STREAM_MAX_IN_FLIGHT,
+                        TimeUnit.MILLISECONDS.toNanos(STREAM_LATENCY_BUDGET_MS)),
+                mGraphicOverlay,
+                (frame, stats) -> {
+                    mImageView.setImageBitmap(frame.getBitmap());
+                    mStatsText.setText(stats.toString());
+                });
+        mImageLoader.cancel();
+        // The stream draws its own graphics.
+        mResults.clear();
+        mTextButton.setEnabled(false);
+        mFaceButton.setEnabled(false);
+        mBothButton.setEnabled(false);
+        mStreamButton.setText(R.string.stop_stream_button);
+        mStatsText.setVisibility(View.VISIBLE);
+        mStreamingDetector.start();
+    }
+
+    /**
+     * Stops the stream and goes back to the selected image.
+     */
+    private void stopStreaming() {
+        if (mStreamingDetector == null) {
+            return;
+        }
+        mStreamingDetector.stop();
+        mStreamingDetector = null;
+        Log.d(TAG, "Streaming stopped: " + mStatsText.getText());
+        mTextButton.setEnabled(true);
+        mFaceButton.setEnabled(true);
+        mBothButton.setEnabled(true);
+        mStreamButton.setText(R.string.start_stream_button);
+        mStatsText.setVisibility(View.GONE);
+        mImageView.setImageBitmap(mSelectedImage);
         mGraphicOverlay.clear();
-        faces.forEach(face ->{
-            FaceContourGraphic faceGraphic = new FaceContourGraphic(mGraphicOverlay);
-            mGraphicOverlay.add(faceGraphic);
-            faceGraphic.updateFace(face);
+        showInSelectedImageCoordinates();
+    }
+
+    /**
+     * Makes the overlay draw in the coordinates of the selected image, which is displayed unscaled.
+     */
+    private void showInSelectedImageCoordinates() {
+        mGraphicOverlay.setCameraInfo(0, 0, CameraCharacteristics.LENS_FACING_BACK);
+    }
+
+    @Override
+    protected void onStop() {
+        stopStreaming();
+        super.onStop();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.menu_record_metrics).setChecked(StageMetrics.isEnabled());
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.menu_record_metrics) {
+            item.setChecked(!item.isChecked());
+            StageMetrics.setEnabled(item.isChecked());
+            return true;
+        } else if (id == R.id.menu_dump_metrics) {
+            dumpStageMetrics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Writes the stage metrics to logcat and to a file in the external files directory, and the
+     * state of the bitmap pool to logcat.
+     */
+    private void dumpStageMetrics() {
+        StageMetrics.dumpToLog();
+        Log.i(TAG, mBitmapPool.toString());
+        try {
+            File file = StageMetrics.dumpToFile(getExternalFilesDir(null));
+            showToast("Stage metrics written to " + file.getName());
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write stage metrics", e);
+            showToast("Unable to write stage metrics");
+        }
+    }
+
+    /**
+     * Recognizes the text of the selected image at its original resolution, tile by tile, and shows
+     * it over the scaled down image.
+     */
+    private void runTiledTextRecognition() {
+        BitmapDecoder.StreamOpener source = mSelectedSource;
+        if (source == null) {
+            return;
+        }
+        mTextButton.setEnabled(false);
+        mTiledTextRecognizer.recognize(source, (texts, width, height) -> {
+            mTextButton.setEnabled(true);
+            if (source != mSelectedSource) {
+                // Another image was selected meanwhile.
+                return;
+            }
+            if (texts == null || texts.getCount() == 0) {
+                showToast("No text found");
+                return;
+            }
+            // The elements are in the coordinates of the original image.
+            mGraphicOverlay.setImageInfo(width, height, CameraCharacteristics.LENS_FACING_BACK);
+            mResults.show(texts, null);
         });
     }
 
@@ -240,14 +639,19 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
 
     public void onItemSelected(AdapterView<?> parent, View v, int position, long id) {
         Log.v("Spinner", "Selected item index: "+position);
-        mGraphicOverlay.clear();
+        stopStreaming();
+        mResults.clear();
+        mStatsText.setVisibility(View.GONE);
+        // Get the dimensions of the View
+        Pair<Integer, Integer> viewSize = getTargetedWidthHeight();
+        AssetManager assetManager = getAssets();
         switch (position) {
             case 0:
-                mSelectedImage = getBitmapFromAsset(this, "Please_walk_on_the_grass.jpg");
+                loadImage(() -> assetManager.open("Please_walk_on_the_grass.jpg"), viewSize);
                 break;
             case 1:
                 // Whatever you want to happen when the thrid item gets selected
-                mSelectedImage = getBitmapFromAsset(this, "grace_hopper.jpg");
+                loadImage(() -> assetManager.open("grace_hopper.jpg"), viewSize);
                 break;
             case 2:
                 //Open new local file
@@ -257,12 +661,33 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
                 //Open new local file
                 requestOpenImage();
         }
-        if (mSelectedImage != null) {
-            // Get the dimensions of the View
-            Pair<Integer, Integer> viewSize = getTargetedWidthHeight();
-            mSelectedImage = resizeBitmap(mSelectedImage, viewSize);
-            mImageView.setImageBitmap(mSelectedImage);
+    }
+
+    /**
+     * Loads an image to become the selected one.
+     */
+    private void loadImage(BitmapDecoder.StreamOpener source, Pair<Integer, Integer> viewSize) {
+        mSelectedSource = source;
+        mImageLoader.load(source, viewSize, mImageLoaded);
+    }
+
+    /**
+     * Makes a loaded bitmap the selected image and hands the previously selected one back to the
+     * pool.
+     */
+    private void showSelectedImage(Bitmap resized) {
+        Bitmap previous = mSelectedImage;
+        mSelectedImage = resized;
+        mImageView.setImageBitmap(mSelectedImage);
+        // A running detection, or the conversion started when it was shown, may still read the
+        // previous image, let the GC have it in that case.
+        if (previous != null && previous != resized && mDetectionsInFlight == 0) {
+            mBitmapPool.put(previous);
         }
+        // Converted while the user picks a detector, and shared by both. The conversion reads the
+        // image like a detection, so it counts as one until it finished.
+        mDetectionsInFlight++;
+        mInputPreparer.preload(mSelectedImage, () -> mDetectionsInFlight--);
     }
 
     public static Bitmap resizeBitmap(Bitmap imageToResize, Pair<Integer, Integer> targetedSize){
@@ -285,6 +710,32 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         return resizedBitmap;
     }
 
+    /**
+     * Same as {@link #resizeBitmap(Bitmap, Pair)}, but draws into a bitmap taken from the pool when
+     * one is available. Returns the input itself when it already has the targeted size.
+     */
+    public static Bitmap resizeBitmap(Bitmap imageToResize, Pair<Integer, Integer> targetedSize,
+                                      BitmapPool pool) {
+        int targetWidth = targetedSize.first;
+        int maxHeight = targetedSize.second;
+
+        // Determine how much to scale down the image
+        float scaleFactor =
+                Math.max(
+                        (float) imageToResize.getWidth() / (float) targetWidth,
+                        (float) imageToResize.getHeight() / (float) maxHeight);
+        int width = (int) (imageToResize.getWidth() / scaleFactor);
+        int height = (int) (imageToResize.getHeight() / scaleFactor);
+        if (width == imageToResize.getWidth() && height == imageToResize.getHeight()) {
+            return imageToResize;
+        }
+
+        Bitmap resizedBitmap = pool.getOrCreate(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(resizedBitmap);
+        canvas.drawBitmap(imageToResize, null, new Rect(0, 0, width, height), RESIZE_PAINT);
+        return resizedBitmap;
+    }
+
     @Override
     public void onNothingSelected(AdapterView<?> parent) {
         // Do nothing
@@ -305,6 +756,26 @@ public class MainActivity extends AppCompatActivity implements AdapterView.OnIte
         return bitmap;
     }
 
+    /**
+     * Decodes an asset sampled down to roughly the targeted size, so large assets are never decoded
+     * at full resolution. The result still needs {@link #resizeBitmap} for an exact fit.
+     */
+    public static Bitmap getBitmapFromAsset(Context context, String filePath,
+                                            Pair<Integer, Integer> targetedSize) {
+        return getBitmapFromAsset(context, filePath, targetedSize, null);
+    }
+
+    /**
+     * Same as {@link #getBitmapFromAsset(Context, String, Pair)}, but decodes into a bitmap taken
+     * from the pool when one is large enough.
+     */
+    public static Bitmap getBitmapFromAsset(Context context, String filePath,
+                                            Pair<Integer, Integer> targetedSize, BitmapPool pool) {
+        AssetManager assetManager = context.getAssets();
+        return BitmapDecoder.decodeSampled(() -> assetManager.open(filePath),
+                targetedSize.first, targetedSize.second, pool);
+    }
+
     public void requestOpenImage(){
         /* Old Intent code
         //Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
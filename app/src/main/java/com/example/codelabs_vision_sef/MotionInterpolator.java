@@ -0,0 +1,110 @@
+package com.example.codelabs_vision_sef;
+
+/**
+ * Smooths a set of coordinates that is only updated at the detection rate, so it can be drawn at
+ * the display rate.
+ * <p>
+ * <p>After an update the values glide from where they were displayed to the new ones over the
+ * time the previous update took, so they never jump. Meanwhile they keep moving at the velocity
+ * between the last two updates, for at most {@link #MAX_EXTRAPOLATION_NANOS}, to keep up with
+ * motion until the next update arrives. An update with a different number of values, like a face
+ * that gained or lost contours, is shown as is.
+ * <p>
+ * <p>Not thread-safe. Sampling allocates nothing.
+ */
+public class MotionInterpolator {
+    // Longest glide towards new values, so a late update does not crawl.
+    static final long MAX_GLIDE_NANOS = 250_000_000L;
+    // How long values keep moving after an update without a new one.
+    static final long MAX_EXTRAPOLATION_NANOS = 150_000_000L;
+
+    // Values displayed when the last update arrived, the updated values and their velocity per
+    // nanosecond. All arrays only grow.
+    private float[] start = new float[0];
+    private float[] target = new float[0];
+    private float[] velocity = new float[0];
+    private int size;
+    private boolean hasValues;
+    private long updateNanos;
+    private long glideNanos;
+
+    /**
+     * Sets new values, received at the given time.
+     *
+     * @param values the values, of which the first {@code count} are used
+     */
+    public void update(float[] values, int count, long nowNanos) {
+        long interval = nowNanos - updateNanos;
+        if (!hasValues || count != size || interval <= 0) {
+            ensureCapacity(count);
+            System.arraycopy(values, 0, start, 0, count);
+            System.arraycopy(values, 0, target, 0, count);
+            for (int i = 0; i < count; i++) {
+                velocity[i] = 0;
+            }
+            size = count;
+            glideNanos = 0;
+        } else {
+            sample(nowNanos, start);
+            for (int i = 0; i < count; i++) {
+                velocity[i] = (values[i] - target[i]) / interval;
+                target[i] = values[i];
+            }
+            glideNanos = Math.min(interval, MAX_GLIDE_NANOS);
+        }
+        hasValues = true;
+        updateNanos = nowNanos;
+    }
+
+    /**
+     * Writes the values to display at the given time.
+     *
+     * @return whether the values still change after that time
+     */
+    public boolean sample(long nowNanos, float[] out) {
+        long elapsed = Math.max(nowNanos - updateNanos, 0);
+        float glide = elapsed >= glideNanos ? 1 : (float) elapsed / glideNanos;
+        long extrapolation = Math.min(elapsed, MAX_EXTRAPOLATION_NANOS);
+        for (int i = 0; i < size; i++) {
+            out[i] = start[i] + (target[i] - start[i]) * glide + velocity[i] * extrapolation;
+        }
+        return elapsed < glideNanos
+                || (elapsed < MAX_EXTRAPOLATION_NANOS && isMoving());
+    }
+
+    /**
+     * Writes the smallest and largest value each coordinate takes from the last update on.
+     */
+    public void getExtremes(float[] outMin, float[] outMax) {
+        for (int i = 0; i < size; i++) {
+            // The glide stays between its ends, and the extrapolation adds up to its full offset.
+            float offset = velocity[i] * MAX_EXTRAPOLATION_NANOS;
+            outMin[i] = Math.min(start[i], target[i]) + Math.min(offset, 0);
+            outMax[i] = Math.max(start[i], target[i]) + Math.max(offset, 0);
+        }
+    }
+
+    /**
+     * Returns the number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean isMoving() {
+        for (int i = 0; i < size; i++) {
+            if (velocity[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int count) {
+        if (start.length < count) {
+            start = new float[count];
+            target = new float[count];
+            velocity = new float[count];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.codelabs_vision_sef;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An image converted to NV21 in a pooled direct buffer, ready to be passed to any number of
+ * detectors at once. Reference counted: whoever got the image from {@link InputImagePreparer}
+ * releases it once its detections completed, and the buffer goes back to the pool when the last
+ * reference is released.
+ */
+public final class Nv21Image {
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final ByteBufferPool pool;
+    private int references = 1;
+
+    /**
+     * @param buffer Y plane followed by interleaved V and U, starting at position 0
+     */
+    Nv21Image(ByteBuffer buffer, int width, int height, ByteBufferPool pool) {
+        this.buffer = buffer;
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the size of an NV21 image with the given even dimensions: a full resolution luma
+     * plane and a chroma plane with one V and U pair per 2x2 block.
+     */
+    static int bufferSize(int width, int height) {
+        return width * height + width * height / 2;
+    }
+
+    /**
+     * Returns a new input over the shared pixels. Every detector gets its own input, which reads
+     * the buffer through its own position.
+     */
+    public InputImage newInputImage() {
+        return InputImage.fromByteBuffer(buffer.duplicate(), width, height, 0,
+                InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    /**
+     * Returns the pixels, for tests. Must not be modified.
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Adds a reference, which must be released too.
+     */
+    public synchronized Nv21Image retain() {
+        if (references == 0) {
+            throw new IllegalStateException("Image already released");
+        }
+        references++;
+        return this;
+    }
+
+    /**
+     * Drops a reference. The image must not be used through it afterwards.
+     */
+    public void release() {
+        synchronized (this) {
+            if (references == 0) {
+                throw new IllegalStateException("Image already released");
+            }
+            if (--references > 0) {
+                return;
+            }
+        }
+        pool.release(buffer);
+    }
+}
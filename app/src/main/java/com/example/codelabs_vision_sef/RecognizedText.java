@@ -0,0 +1,129 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.text.Text;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The text elements of a recognition result in a compact form: their boxes in one primitive array
+ * and their texts, which is everything the overlay draws. Immutable, and can be written to and read
+ * from a stream.
+ */
+public final class RecognizedText {
+    private final float[] boxes;
+    private final String[] texts;
+
+    /**
+     * @param boxes left, top, right and bottom of each element, in image coordinates
+     * @param texts text of each element
+     */
+    public RecognizedText(float[] boxes, String[] texts) {
+        if (boxes.length != texts.length * 4) {
+            throw new IllegalArgumentException("Expected 4 box coordinates per text");
+        }
+        this.boxes = boxes;
+        this.texts = texts;
+    }
+
+    /**
+     * Collects every element of the recognized text.
+     */
+    public static RecognizedText fromText(Text text) {
+        List<Text.Element> elements = new ArrayList<>();
+        for (Text.TextBlock block : text.getTextBlocks()) {
+            for (Text.Line line : block.getLines()) {
+                elements.addAll(line.getElements());
+            }
+        }
+
+        float[] boxes = new float[elements.size() * 4];
+        String[] texts = new String[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            Text.Element element = elements.get(i);
+            Rect box = element.getBoundingBox();
+            if (box != null) {
+                boxes[i * 4] = box.left;
+                boxes[i * 4 + 1] = box.top;
+                boxes[i * 4 + 2] = box.right;
+                boxes[i * 4 + 3] = box.bottom;
+            }
+            texts[i] = element.getText();
+        }
+        return new RecognizedText(boxes, texts);
+    }
+
+    /**
+     * Returns the number of elements.
+     */
+    public int getCount() {
+        return texts.length;
+    }
+
+    /**
+     * Returns the boxes of all elements, four coordinates each. Must not be modified.
+     */
+    public float[] getBoxes() {
+        return boxes;
+    }
+
+    /**
+     * Returns the texts of all elements. Must not be modified.
+     */
+    public String[] getTexts() {
+        return texts;
+    }
+
+    /**
+     * Whether the other result has the same elements in the same order, so repeated detections of
+     * an unchanged image can keep their graphics.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecognizedText)) {
+            return false;
+        }
+        RecognizedText other = (RecognizedText) o;
+        return Arrays.equals(boxes, other.boxes) && Arrays.equals(texts, other.texts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(boxes) + Arrays.hashCode(texts);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            for (int j = 0; j < 4; j++) {
+                out.writeFloat(boxes[i * 4 + j]);
+            }
+            out.writeUTF(texts[i]);
+        }
+    }
+
+    public static RecognizedText readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid element count " + count);
+        }
+        float[] boxes = new float[count * 4];
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < 4; j++) {
+                boxes[i * 4 + j] = in.readFloat();
+            }
+            texts[i] = in.readUTF();
+        }
+        return new RecognizedText(boxes, texts);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays still images as a stream of frames at a fixed rate, looping over them. Lets the
+ * streaming mode run and be measured without a camera.
+ * <p>
+ * <p>Like a camera, every frame gets its own bitmap: the decoded image is copied into a bitmap
+ * taken from the pool, which goes back to the pool when the frame is released. The decoded images
+ * go back to the pool when the source stops.
+ */
+public class ReplayFrameSource implements FrameSource {
+    private static final String TAG = "ReplayFrameSource";
+
+    private final List<BitmapDecoder.StreamOpener> sources;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int framesPerSecond;
+    private final int facing;
+    private final BitmapPool pool;
+
+    private ScheduledExecutorService executor;
+    // Decoded images of the running replay. Their contents are only touched on the executor.
+    private List<Bitmap> bitmaps;
+
+    /**
+     * @param sources         encoded images to replay, in order
+     * @param targetWidth     width the images are sampled down to when decoded
+     * @param targetHeight    height the images are sampled down to when decoded
+     * @param framesPerSecond rate at which frames are delivered
+     * @param facing          lens facing reported with every frame
+     * @param pool            pool the decoded images and the frame bitmaps are taken from
+     */
+    public ReplayFrameSource(List<BitmapDecoder.StreamOpener> sources, int targetWidth,
+                             int targetHeight, int framesPerSecond, int facing, BitmapPool pool) {
+        this.sources = sources;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.framesPerSecond = framesPerSecond;
+        this.facing = facing;
+        this.pool = pool;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (executor != null) {
+            throw new IllegalStateException("Already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(
+                runnable -> new Thread(runnable, TAG));
+        // Decodes once on the source thread, then only copies the decoded images.
+        List<Bitmap> bitmaps = new ArrayList<>();
+        executor.execute(() -> {
+            for (BitmapDecoder.StreamOpener source : sources) {
+                Bitmap bitmap = BitmapDecoder.decodeSampled(source, targetWidth, targetHeight,
+                        pool);
+                if (bitmap != null) {
+                    bitmaps.add(bitmap);
+                } else {
+                    Log.w(TAG, "Skipping an image that could not be decoded");
+                }
+            }
+        });
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        executor.scheduleAtFixedRate(new Runnable() {
+            private final Canvas canvas = new Canvas();
+            private int next;
+
+            @Override
+            public void run() {
+                if (bitmaps.isEmpty()) {
+                    return;
+                }
+                Bitmap image = bitmaps.get(next);
+                next = (next + 1) % bitmaps.size();
+                Bitmap bitmap = pool.getOrCreate(image.getWidth(), image.getHeight(),
+                        Bitmap.Config.ARGB_8888);
+                canvas.setBitmap(bitmap);
+                canvas.drawBitmap(image, 0, 0, null);
+                canvas.setBitmap(null);
+                listener.onFrame(new Frame(bitmap, SystemClock.elapsedRealtimeNanos(), facing,
+                        () -> pool.put(bitmap)));
+            }
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+        this.bitmaps = bitmaps;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            // Shutting down cancels the frames but still runs the decode, then pools its images.
+            List<Bitmap> decoded = bitmaps;
+            executor.execute(() -> {
+                for (Bitmap bitmap : decoded) {
+                    pool.put(bitmap);
+                }
+                decoded.clear();
+            });
+            executor.shutdown();
+            executor = null;
+            bitmaps = null;
+        }
+    }
+}
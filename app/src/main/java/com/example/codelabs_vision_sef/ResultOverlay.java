@@ -0,0 +1,102 @@
+package com.example.codelabs_vision_sef;
+
+import java.util.List;
+
+/**
+ * Shows the text and faces detected in an image in a {@link GraphicOverlay}, and lets the words of
+ * the text be selected.
+ * <p>
+ * <p>Faces shown before keep their graphic, see {@link FaceGraphicTracker}. All text is drawn by
+ * one {@link TextLayerGraphic}, which keeps the elements shown before, and is indexed with a
+ * {@link TextIndex} whenever its elements change.
+ * <p>
+ * <p>Must be used on the thread that draws the overlay.
+ */
+public class ResultOverlay {
+    private static final RecognizedText NO_TEXT = new RecognizedText(new float[0], new String[0]);
+
+    private final GraphicOverlay overlay;
+    private final FaceGraphicTracker faceGraphics;
+    // In the overlay while it has elements.
+    private final TextLayerGraphic textLayer;
+    // Index of the elements of the text layer, or null if it has none.
+    private TextIndex textIndex;
+
+    public ResultOverlay(GraphicOverlay overlay) {
+        this.overlay = overlay;
+        this.faceGraphics = new FaceGraphicTracker(overlay);
+        this.textLayer = new TextLayerGraphic(overlay);
+    }
+
+    /**
+     * Shows the given text and faces instead of the results shown before, leaving out a null
+     * result, in one overlay transaction.
+     */
+    public void show(RecognizedText texts, List<FaceData> faces) {
+        GraphicOverlay.Transaction transaction = overlay.beginTransaction();
+        boolean textChanged = textLayer.update(texts != null ? texts : NO_TEXT);
+        if (textLayer.getCount() > 0) {
+            // Does nothing if it is in the overlay already.
+            transaction.add(textLayer);
+        } else {
+            transaction.remove(textLayer);
+        }
+        if (faces != null) {
+            faceGraphics.update(faces, transaction);
+        } else {
+            faceGraphics.clear(transaction);
+        }
+        transaction.commit();
+
+        if (textLayer.getCount() == 0) {
+            textIndex = null;
+        } else if (textChanged || textIndex == null) {
+            textIndex = new TextIndex(textLayer.copyBoxes());
+        }
+    }
+
+    /**
+     * Removes the text and faces from the overlay.
+     */
+    public void clear() {
+        show(null, null);
+    }
+
+    /**
+     * Whether text is shown, whose words can be selected.
+     */
+    public boolean hasText() {
+        return textIndex != null;
+    }
+
+    /**
+     * Highlights the word at a point of the overlay instead of the one highlighted before.
+     *
+     * @param slop distance from a word at which it still counts as hit, in view pixels
+     * @return the text of the word, or null if there is none
+     */
+    public String selectTextAt(float viewX, float viewY, float slop) {
+        if (textIndex == null) {
+            return null;
+        }
+        GraphicOverlay.Transform transform = overlay.getTransform();
+        int element = textIndex.findAt(transform.unmapX(viewX), transform.unmapY(viewY),
+                slop / transform.scaleX(1));
+        textLayer.setSelected(element);
+        return element >= 0 ? textLayer.getText(element) : null;
+    }
+
+    /**
+     * Returns the layer showing the text.
+     */
+    TextLayerGraphic getTextLayer() {
+        return textLayer;
+    }
+
+    /**
+     * Returns the face graphics, with their counts of graphics created and reused.
+     */
+    FaceGraphicTracker getFaceGraphics() {
+        return faceGraphics;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.codelabs_vision_sef;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times the stages of loading, analyzing and drawing an image, to tell which one a slow detection
+ * spends its time in.
+ * <p>
+ * <p>Every stage is a {@link Trace} section, visible in system traces, and a
+ * {@link LatencyHistogram} of its durations. Counters track the graphics drawn, the graphics and
+ * text elements created, reused and removed by result updates, the overlay frames replayed from a
+ * recording, and the bitmap bytes allocated. Everything is off until {@link #setEnabled(boolean)}
+ * turns it on; while off, each call costs a read of one volatile field. {@link #dump(Writer)}
+ * writes the percentiles of every stage and the counters.
+ * <p>
+ * <p>Same thread stages are timed with {@link #begin(Stage)} and {@link #end(Stage, long)}, stages
+ * that end on another thread, like ML Kit inference, with {@link #beginAsync(Stage)} and
+ * {@link #endAsync(Stage, long)}.
+ */
+public final class StageMetrics {
+    private static final String TAG = "StageMetrics";
+    // Returned by begin() while disabled, so end() does nothing even if enabled in between.
+    private static final long DISABLED = Long.MIN_VALUE;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Timed stages, in the order an image goes through them.
+     */
+    public enum Stage {
+        DECODE("decode"),
+        RESIZE("resize"),
+        INPUT_IMAGE("inputImage"),
+        TEXT_RECOGNITION("textRecognition"),
+        FACE_DETECTION("faceDetection"),
+        TEXT_RESULT("textResult"),
+        FACE_RESULT("faceResult"),
+        DRAW("draw");
+
+        final String label;
+        final String sectionName;
+
+        Stage(String label) {
+            this.label = label;
+            this.sectionName = "Vision:" + label;
+        }
+    }
+
+    public enum Counter {
+        GRAPHICS_DRAWN("graphicsDrawn"),
+        GRAPHICS_SKIPPED("graphicsSkipped"),
+        GRAPHICS_CREATED("graphicsCreated"),
+        GRAPHICS_REUSED("graphicsReused"),
+        GRAPHICS_REMOVED("graphicsRemoved"),
+        TEXT_ELEMENTS_CREATED("textElementsCreated"),
+        TEXT_ELEMENTS_REUSED("textElementsReused"),
+        TEXT_ELEMENTS_REMOVED("textElementsRemoved"),
+        FRAMES_REPLAYED("framesReplayed"),
+        BITMAP_BYTES_ALLOCATED("bitmapBytesAllocated");
+
+        final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[STAGES.length];
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(COUNTERS.length);
+    private static volatile boolean enabled;
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private StageMetrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        StageMetrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a stage that ends on the calling thread.
+     *
+     * @return the token to pass to {@link #end(Stage, long)}
+     */
+    public static long begin(Stage stage) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        Trace.beginSection(stage.sectionName);
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static void end(Stage stage, long token) {
+        if (token == DISABLED) {
+            return;
+        }
+        HISTOGRAMS[stage.ordinal()].record(SystemClock.elapsedRealtimeNanos() - token);
+        Trace.endSection();
+    }
+
+    /**
+     * Starts timing a stage that may end on another thread.
+     *
+     * @return the token to pass to {@link #endAsync(Stage, long)}
+     */
+    public static long beginAsync(Stage stage) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        // The start time tells concurrent sections of a stage apart.
+        Trace.beginAsyncSection(stage.sectionName, (int) start);
+        return start;
+    }
+
+    public static void endAsync(Stage stage, long token) {
+        if (token == DISABLED) {
+            return;
+        }
+        HISTOGRAMS[stage.ordinal()].record(SystemClock.elapsedRealtimeNanos() - token);
+        Trace.endAsyncSection(stage.sectionName, (int) token);
+    }
+
+    public static void add(Counter counter, long delta) {
+        if (enabled) {
+            COUNTS.addAndGet(counter.ordinal(), delta);
+        }
+    }
+
+    static LatencyHistogram getHistogram(Stage stage) {
+        return HISTOGRAMS[stage.ordinal()];
+    }
+
+    static long getCount(Counter counter) {
+        return COUNTS.get(counter.ordinal());
+    }
+
+    /**
+     * Forgets every duration and counter.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTS.length(); i++) {
+            COUNTS.set(i, 0);
+        }
+    }
+
+    /**
+     * Writes the count, mean, median, 90th, 99th percentile and maximum of every stage in
+     * milliseconds, then the counters.
+     */
+    public static void dump(Writer out) throws IOException {
+        out.write(String.format(Locale.US, "%-16s %8s %9s %9s %9s %9s %9s%n",
+                "stage", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Stage stage : STAGES) {
+            LatencyHistogram histogram = HISTOGRAMS[stage.ordinal()];
+            out.write(String.format(Locale.US,
+                    "%-16s %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n", stage.label,
+                    histogram.getCount(), histogram.getMean() / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getMax() / NANOS_PER_MILLI));
+        }
+        for (Counter counter : COUNTERS) {
+            out.write(String.format(Locale.US, "%-20s %d%n", counter.label,
+                    COUNTS.get(counter.ordinal())));
+        }
+    }
+
+    /**
+     * Writes the dump to logcat, one line per stage and counter.
+     */
+    public static void dumpToLog() {
+        StringWriter out = new StringWriter();
+        try {
+            dump(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String line : out.toString().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+
+    /**
+     * Writes the dump to a new file in the given directory.
+     *
+     * @return the file
+     */
+    public static File dumpToFile(File directory) throws IOException {
+        File file = new File(directory, "stage-metrics-" + System.currentTimeMillis() + ".txt");
+        try (Writer out = new FileWriter(file)) {
+            dump(out);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.codelabs_vision_sef;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.text.Text;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs face and text detection continuously on the frames of a {@link FrameSource} and renders
+ * the results on a {@link GraphicOverlay}.
+ * <p>
+ * <p>Frames go through a {@link LatestFrameQueue}, so when detection is slower than the source the
+ * oldest pending frame is dropped instead of building a backlog. A worker thread submits the latest
+ * frame to both detectors whenever the {@link DetectionScheduler} allows it, and switches to the
+ * fallback face detector while the scheduler reports it is behind. Results are rendered on the main
+ * thread, which reports achieved frame rate, dropped frames and end-to-end latency.
+ */
+public class StreamingDetector {
+    private static final String TAG = "StreamingDetector";
+    // Number of rendered frames the frame rate is averaged over.
+    private static final int FPS_WINDOW = 30;
+
+    /**
+     * Receives every rendered frame on the main thread. The frame stays valid until the next one
+     * is rendered or the detection stops.
+     */
+    public interface Listener {
+        void onFrameRendered(Frame frame, Stats stats);
+    }
+
+    /**
+     * Performance of the stream so far.
+     */
+    public static final class Stats {
+        public final float framesPerSecond;
+        public final long renderedCount;
+        public final long droppedCount;
+        public final float lastLatencyMs;
+        public final float averageLatencyMs;
+        // Detection time alone, see DetectionScheduler.
+        public final float detectionP50Ms;
+        public final float detectionP90Ms;
+        public final boolean degraded;
+        // Face graphics and text elements kept from the previous result and created for new ones.
+        public final long facesReusedCount;
+        public final long facesCreatedCount;
+        public final long wordsReusedCount;
+        public final long wordsCreatedCount;
+
+        Stats(float framesPerSecond, long renderedCount, long droppedCount, float lastLatencyMs,
+              float averageLatencyMs, float detectionP50Ms, float detectionP90Ms,
+              boolean degraded, long facesReusedCount, long facesCreatedCount,
+              long wordsReusedCount, long wordsCreatedCount) {
+            this.framesPerSecond = framesPerSecond;
+            this.renderedCount = renderedCount;
+            this.droppedCount = droppedCount;
+            this.lastLatencyMs = lastLatencyMs;
+            this.averageLatencyMs = averageLatencyMs;
+            this.detectionP50Ms = detectionP50Ms;
+            this.detectionP90Ms = detectionP90Ms;
+            this.degraded = degraded;
+            this.facesReusedCount = facesReusedCount;
+            this.facesCreatedCount = facesCreatedCount;
+            this.wordsReusedCount = wordsReusedCount;
+            this.wordsCreatedCount = wordsCreatedCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f fps, %d dropped, latency %.0f ms (avg %.0f ms)"
+                            + "\ndetection p50 %.0f ms, p90 %.0f ms%s"
+                            + "\nfaces %d reused, %d created, words %d reused, %d created",
+                    framesPerSecond, droppedCount, lastLatencyMs, averageLatencyMs,
+                    detectionP50Ms, detectionP90Ms, degraded ? ", degraded" : "",
+                    facesReusedCount, facesCreatedCount, wordsReusedCount, wordsCreatedCount);
+        }
+    }
+
+    private final FrameSource source;
+    private final FaceDetector faceDetector;
+    private final FaceDetector fallbackFaceDetector;
+    private final TextRecognizer textRecognizer;
+    private final InputImagePreparer inputPreparer;
+    private final GraphicOverlay overlay;
+    private final Listener listener;
+    private final DetectionScheduler scheduler;
+    private final ResultOverlay results;
+    private final LatestFrameQueue<Frame> queue = new LatestFrameQueue<>();
+
+    private Thread worker;
+    private volatile boolean running;
+
+    // Used on the main thread only.
+    private final long[] renderTimesNanos = new long[FPS_WINDOW];
+    private long renderedCount;
+    private long totalLatencyNanos;
+    private long lastRenderedCaptureNanos;
+    // Results overtaken by the result of a later frame.
+    private long staleCount;
+    // Frame handed to the listener last, released once a later frame replaces it.
+    private Frame shownFrame;
+
+    /**
+     * @param faceDetector         detector used while detection keeps up
+     * @param fallbackFaceDetector cheaper detector used while the scheduler reports it is behind
+     * @param inputPreparer        converts the frames for the detectors
+     */
+    public StreamingDetector(FrameSource source, FaceDetector faceDetector,
+                             FaceDetector fallbackFaceDetector, TextRecognizer textRecognizer,
+                             InputImagePreparer inputPreparer,
+                             DetectionScheduler scheduler, GraphicOverlay overlay,
+                             Listener listener) {
+        this.source = source;
+        this.faceDetector = faceDetector;
+        this.fallbackFaceDetector = fallbackFaceDetector;
+        this.scheduler = scheduler;
+        this.textRecognizer = textRecognizer;
+        this.inputPreparer = inputPreparer;
+        this.overlay = overlay;
+        this.listener = listener;
+        this.results = new ResultOverlay(overlay);
+    }
+
+    /**
+     * Starts pulling frames from the source. Must be called on the main thread.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::processFrames, TAG);
+        worker.start();
+        source.start(this::onFrame);
+    }
+
+    private void onFrame(Frame frame) {
+        Frame dropped = queue.offer(frame);
+        if (dropped != null) {
+            dropped.release();
+        }
+        // A frame delivered while stopping would stay in the queue.
+        if (!running) {
+            release(queue.poll());
+        }
+    }
+
+    private static void release(Frame frame) {
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * Stops the source and the detection. Results still in flight are discarded. Must be called on
+     * the main thread.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        source.stop();
+        worker.interrupt();
+        worker = null;
+        release(queue.poll());
+        release(shownFrame);
+        shownFrame = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void processFrames() {
+        while (running) {
+            Frame frame;
+            try {
+                // The slot is taken first, so the frame submitted is the latest one once the
+                // detectors can take it.
+                scheduler.acquire();
+                frame = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long submitNanos = System.nanoTime();
+            // Converted once for both detectors. Every frame has new pixels, so the conversion is
+            // not kept for reuse and does not push the selected image out.
+            Nv21Image input = inputPreparer.prepareUncached(frame.getBitmap());
+            if (input == null) {
+                scheduler.onFailed();
+                frame.release();
+                continue;
+            }
+            FaceDetector detector = scheduler.isDegraded() ? fallbackFaceDetector : faceDetector;
+            // Both detectors run at the same time, the frame is done when the slower one is.
+            Task<List<Face>> faceTask = detector.process(input.newInputImage());
+            Task<Text> textTask = textRecognizer.process(input.newInputImage());
+            Tasks.whenAllComplete(faceTask, textTask).addOnCompleteListener(task -> {
+                input.release();
+                if (faceTask.isSuccessful() && textTask.isSuccessful()) {
+                    scheduler.onComplete(System.nanoTime() - submitNanos);
+                    render(frame, faceTask.getResult(), textTask.getResult());
+                } else {
+                    scheduler.onFailed();
+                    frame.release();
+                    Exception e = faceTask.isSuccessful()
+                            ? textTask.getException() : faceTask.getException();
+                    Log.e(TAG, "Detection failed, skipping frame", e);
+                }
+            });
+        }
+    }
+
+    private void render(Frame frame, List<Face> faces, Text text) {
+        if (!running) {
+            frame.release();
+            return;
+        }
+        // With several frames in flight a later frame may finish first.
+        if (frame.getCaptureTimeNanos() < lastRenderedCaptureNanos) {
+            staleCount++;
+            frame.release();
+            return;
+        }
+        lastRenderedCaptureNanos = frame.getCaptureTimeNanos();
+
+        overlay.setImageInfo(frame.getBitmap().getWidth(), frame.getBitmap().getHeight(),
+                frame.getFacing());
+        // Faces keep their graphic across frames and move smoothly between results, and words
+        // recognized the same as before keep their slot in the text layer.
+        results.show(RecognizedText.fromText(text), FaceData.fromFaces(faces));
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        long latencyNanos = now - frame.getCaptureTimeNanos();
+        totalLatencyNanos += latencyNanos;
+        renderTimesNanos[(int) (renderedCount % FPS_WINDOW)] = now;
+        renderedCount++;
+
+        listener.onFrameRendered(frame, new Stats(
+                framesPerSecond(now),
+                renderedCount,
+                queue.getDroppedCount() + staleCount,
+                toMillis(latencyNanos),
+                toMillis(totalLatencyNanos) / renderedCount,
+                toMillis(scheduler.getLatencyPercentileNanos(50)),
+                toMillis(scheduler.getLatencyPercentileNanos(90)),
+                scheduler.isDegraded(),
+                results.getFaceGraphics().getReusedCount(),
+                results.getFaceGraphics().getCreatedCount(),
+                results.getTextLayer().getReusedCount(),
+                results.getTextLayer().getCreatedCount()));
+        // The listener shows the new frame, so the one it showed before is free.
+        release(shownFrame);
+        shownFrame = frame;
+    }
+
+    private static float toMillis(long nanos) {
+        return nanos / (float) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the frame rate over the last rendered frames, at most {@link #FPS_WINDOW} of them.
+     */
+    private float framesPerSecond(long now) {
+        int frames = (int) Math.min(renderedCount, FPS_WINDOW);
+        if (frames < 2) {
+            return 0;
+        }
+        long oldest = renderTimesNanos[(int) ((renderedCount - frames) % FPS_WINDOW)];
+        return (frames - 1) * (float) TimeUnit.SECONDS.toNanos(1) / (now - oldest);
+    }
+}
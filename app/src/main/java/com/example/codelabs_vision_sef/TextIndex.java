@@ -0,0 +1,209 @@
+package com.example.codelabs_vision_sef;
+
+/**
+ * A uniform grid over the element boxes of a {@link RecognizedText}, to find the element at a point
+ * or the elements in a rectangle without testing every element.
+ * <p>
+ * <p>The grid covers the bounds of all boxes with about {@value #ELEMENTS_PER_CELL} elements per
+ * cell, and every element is listed in each cell its box overlaps. The lists are packed in one
+ * array, each cell's list starting at its entry in a second array, so the index is three primitive
+ * arrays however many elements there are. A query only tests the elements of the cells it
+ * overlaps, and reports an element from the first of those cells that lists it.
+ * <p>
+ * <p>Immutable, so queries can be made from any thread.
+ */
+public final class TextIndex {
+    private static final int ELEMENTS_PER_CELL = 2;
+    private static final int MAX_CELLS = 1 << 16;
+
+    // Left, top, right and bottom of each element, left not right of right and top not below
+    // bottom, in image coordinates.
+    private final float[] boxes;
+    private final int count;
+
+    private final float originX;
+    private final float originY;
+    private final float cellWidth;
+    private final float cellHeight;
+    private final int columns;
+    private final int rows;
+    // Elements of cell i are cellElements[cellStarts[i]] up to cellElements[cellStarts[i + 1]].
+    private final int[] cellStarts;
+    private final int[] cellElements;
+
+    /**
+     * Indexes the elements of a recognition result.
+     */
+    public TextIndex(RecognizedText text) {
+        this(text.getBoxes());
+    }
+
+    /**
+     * @param boxes left, top, right and bottom of each element. Must not be modified afterwards.
+     */
+    TextIndex(float[] boxes) {
+        this.boxes = boxes;
+        this.count = boxes.length / 4;
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, boxes[i * 4]);
+            minY = Math.min(minY, boxes[i * 4 + 1]);
+            maxX = Math.max(maxX, boxes[i * 4 + 2]);
+            maxY = Math.max(maxY, boxes[i * 4 + 3]);
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        // A grid at least one unit wide, so every coordinate falls into a cell.
+        float width = Math.max(maxX - minX, 1);
+        float height = Math.max(maxY - minY, 1);
+        int cells = Math.max(1, Math.min(MAX_CELLS, count / ELEMENTS_PER_CELL));
+        // Cells about as wide as high.
+        columns = clamp((int) Math.round(Math.sqrt(cells * width / height)), 1, cells);
+        rows = Math.max(1, cells / columns);
+        originX = minX;
+        originY = minY;
+        cellWidth = width / columns;
+        cellHeight = height / rows;
+
+        // Counts the elements of every cell, shifted by one, and sums them up to the starts.
+        cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++) {
+            int firstColumn = columnOf(boxes[i * 4]);
+            int lastColumn = columnOf(boxes[i * 4 + 2]);
+            int lastRow = rowOf(boxes[i * 4 + 3]);
+            for (int row = rowOf(boxes[i * 4 + 1]); row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    cellStarts[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i < cellStarts.length; i++) {
+            cellStarts[i] += cellStarts[i - 1];
+        }
+        cellElements = new int[cellStarts[cellStarts.length - 1]];
+        int[] next = new int[columns * rows];
+        System.arraycopy(cellStarts, 0, next, 0, next.length);
+        for (int i = 0; i < count; i++) {
+            int firstColumn = columnOf(boxes[i * 4]);
+            int lastColumn = columnOf(boxes[i * 4 + 2]);
+            int lastRow = rowOf(boxes[i * 4 + 3]);
+            for (int row = rowOf(boxes[i * 4 + 1]); row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    cellElements[next[row * columns + column]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of indexed elements.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Finds the element at a point, for selecting a word by tapping it. Among the elements whose
+     * box is at most {@code slop} away from the point the closest one is found, of several that
+     * contain the point the smallest.
+     *
+     * @param slop distance from its box at which an element still counts as hit, in image units
+     * @return the index of the element, or -1 if there is none
+     */
+    public int findAt(float x, float y, float slop) {
+        int firstColumn = columnOf(x - slop);
+        int lastColumn = columnOf(x + slop);
+        int firstRow = rowOf(y - slop);
+        int lastRow = rowOf(y + slop);
+        int best = -1;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        float bestArea = Float.POSITIVE_INFINITY;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++) {
+                    int i = cellElements[j];
+                    if (!isFirstCell(i, column, row, firstColumn, firstRow)) {
+                        continue;
+                    }
+                    float dx = Math.max(0, Math.max(boxes[i * 4] - x, x - boxes[i * 4 + 2]));
+                    float dy = Math.max(0, Math.max(boxes[i * 4 + 1] - y, y - boxes[i * 4 + 3]));
+                    if (dx > slop || dy > slop) {
+                        continue;
+                    }
+                    float distance = dx * dx + dy * dy;
+                    float area = (boxes[i * 4 + 2] - boxes[i * 4])
+                            * (boxes[i * 4 + 3] - boxes[i * 4 + 1]);
+                    if (distance < bestDistance || (distance == bestDistance && area < bestArea)) {
+                        best = i;
+                        bestDistance = distance;
+                        bestArea = area;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the elements whose box intersects a rectangle, touching edges included, in no
+     * particular order.
+     *
+     * @param out receives the indices of the elements, as many as fit
+     * @return the number of elements found, which may be more than were written
+     */
+    public int findIntersecting(float left, float top, float right, float bottom, int[] out) {
+        if (left > right || top > bottom) {
+            return 0;
+        }
+        int firstColumn = columnOf(left);
+        int lastColumn = columnOf(right);
+        int firstRow = rowOf(top);
+        int lastRow = rowOf(bottom);
+        int found = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++) {
+                    int i = cellElements[j];
+                    if (!isFirstCell(i, column, row, firstColumn, firstRow)
+                            || boxes[i * 4] > right || boxes[i * 4 + 2] < left
+                            || boxes[i * 4 + 1] > bottom || boxes[i * 4 + 3] < top) {
+                        continue;
+                    }
+                    if (found < out.length) {
+                        out[found] = i;
+                    }
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Whether the cell is the first one a query starting at the given cell visits of those listing
+     * the element, so elements spanning several cells are reported once.
+     */
+    private boolean isFirstCell(int element, int column, int row, int queryColumn, int queryRow) {
+        return column == Math.max(columnOf(boxes[element * 4]), queryColumn)
+                && row == Math.max(rowOf(boxes[element * 4 + 1]), queryRow);
+    }
+
+    private int columnOf(float x) {
+        return clamp((int) Math.floor((x - originX) / cellWidth), 0, columns - 1);
+    }
+
+    private int rowOf(float y) {
+        return clamp((int) Math.floor((y - originY) / cellHeight), 0, rows - 1);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,416 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.example.codelabs_vision_sef.GraphicOverlay.Graphic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Graphic instance rendering every recognized text element of a page as one layer.
+ * <p>
+ * <p>Element boxes are kept in primitive arrays and drawn with a single
+ * {@link Canvas#drawLines(float[], int, int, Paint)} call using shared paints. Boxes are mapped to
+ * view coordinates in one pass, only when the overlay transform changes, so drawing a frame
+ * allocates nothing.
+ * <p>
+ * <p>A new result is reconciled with the elements shown, see {@link #update(RecognizedText)}:
+ * elements with the same box and text keep their slot, only the others are removed or appended.
+ * <p>
+ * <p>One element can be selected, for example with a {@link TextIndex}, and is then highlighted.
+ */
+public class TextLayerGraphic extends Graphic {
+
+    private static final int TEXT_COLOR = Color.RED;
+    // Translucent red.
+    private static final int SELECTED_COLOR = 0x60ff0000;
+    private static final float TEXT_SIZE = 54.0f;
+    private static final float STROKE_WIDTH = 4.0f;
+    // Four line segments of four coordinates per box.
+    private static final int LINE_FLOATS_PER_BOX = 16;
+
+    private static final Paint RECT_PAINT = new Paint();
+    private static final Paint TEXT_PAINT = new Paint();
+    private static final Paint SELECTED_PAINT = new Paint();
+
+    static {
+        RECT_PAINT.setColor(TEXT_COLOR);
+        RECT_PAINT.setStyle(Paint.Style.STROKE);
+        RECT_PAINT.setStrokeWidth(STROKE_WIDTH);
+        // Square caps close the corners where two sides of a box meet.
+        RECT_PAINT.setStrokeCap(Paint.Cap.SQUARE);
+
+        TEXT_PAINT.setColor(TEXT_COLOR);
+        TEXT_PAINT.setTextSize(TEXT_SIZE);
+
+        SELECTED_PAINT.setColor(SELECTED_COLOR);
+        SELECTED_PAINT.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * The box and text of an element, which identify it across results.
+     */
+    private static final class ElementKey {
+        final float left;
+        final float top;
+        final float right;
+        final float bottom;
+        final String text;
+
+        ElementKey(float[] boxes, String[] texts, int index) {
+            left = boxes[index * 4];
+            top = boxes[index * 4 + 1];
+            right = boxes[index * 4 + 2];
+            bottom = boxes[index * 4 + 3];
+            text = texts[index];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ElementKey)) {
+                return false;
+            }
+            ElementKey other = (ElementKey) o;
+            return left == other.left && top == other.top && right == other.right
+                    && bottom == other.bottom && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Float.floatToIntBits(left);
+            hash = 31 * hash + Float.floatToIntBits(top);
+            hash = 31 * hash + Float.floatToIntBits(right);
+            hash = 31 * hash + Float.floatToIntBits(bottom);
+            return 31 * hash + text.hashCode();
+        }
+    }
+
+    // Number of elements, the arrays may have room for more.
+    private int count;
+    // Element boxes in image coordinates: left, top, right, bottom.
+    private float[] boxes;
+    private String[] texts;
+
+    // Boxes in view coordinates, as corners, as line segments, and the anchor of each text.
+    private float[] viewBoxes;
+    private float[] lines;
+    private float[] textAnchors;
+    // Transform the view coordinates were computed with, see mapToView().
+    private GraphicOverlay.Transform mappedTransform;
+    // Index of the highlighted element, or -1.
+    private int selected = -1;
+
+    private long createdCount;
+    private long reusedCount;
+    private long removedCount;
+
+    /**
+     * Creates a layer without elements, to be filled by {@link #update(RecognizedText)}.
+     */
+    TextLayerGraphic(GraphicOverlay overlay) {
+        this(overlay, new float[0], new String[0]);
+    }
+
+    /**
+     * Creates a layer for the given elements.
+     *
+     * @param boxes left, top, right and bottom of each element, in image coordinates
+     * @param texts text of each element
+     */
+    TextLayerGraphic(GraphicOverlay overlay, float[] boxes, String[] texts) {
+        super(overlay);
+        if (boxes.length != texts.length * 4) {
+            throw new IllegalArgumentException("Expected 4 box coordinates per text");
+        }
+        this.count = texts.length;
+        // Copied, as updates change them.
+        this.boxes = boxes.clone();
+        this.texts = texts.clone();
+        this.viewBoxes = new float[count * 4];
+        this.lines = new float[count * LINE_FLOATS_PER_BOX];
+        this.textAnchors = new float[count * 2];
+    }
+
+    /**
+     * Creates a layer for the elements of a recognition result.
+     */
+    TextLayerGraphic(GraphicOverlay overlay, RecognizedText text) {
+        this(overlay, text.getBoxes(), text.getTexts());
+    }
+
+    /**
+     * Shows the elements of a new recognition result instead of the current ones. An element with
+     * the same box and text as a current one keeps its slot, with its view coordinates and its
+     * selection. The slots of the other current elements are filled by moving the last elements
+     * into them, and new elements are appended, so slots are not in the order of the result.
+     *
+     * @return whether any element was added or removed
+     */
+    public boolean update(RecognizedText text) {
+        float[] newBoxes = text.getBoxes();
+        String[] newTexts = text.getTexts();
+        int newCount = text.getCount();
+
+        // The first free slot of every key, and the next slot of each with the same key, or -1.
+        Map<ElementKey, Integer> slots = new HashMap<>(count * 2);
+        int[] nextSameKey = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            Integer next = slots.put(new ElementKey(boxes, texts, i), i);
+            nextSameKey[i] = next != null ? next : -1;
+        }
+        boolean[] kept = new boolean[count];
+        int[] added = new int[newCount];
+        int addedCount = 0;
+        for (int j = 0; j < newCount; j++) {
+            ElementKey key = new ElementKey(newBoxes, newTexts, j);
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                added[addedCount++] = j;
+                continue;
+            }
+            kept[slot] = true;
+            // A repeated element takes the next slot with its key.
+            if (nextSameKey[slot] >= 0) {
+                slots.put(key, nextSameKey[slot]);
+            } else {
+                slots.remove(key);
+            }
+        }
+        int reused = newCount - addedCount;
+        int removed = count - reused;
+
+        if (selected >= 0 && !kept[selected]) {
+            selected = -1;
+        }
+        int end = count;
+        for (int i = 0; i < end; i++) {
+            if (kept[i]) {
+                continue;
+            }
+            do {
+                end--;
+            } while (end > i && !kept[end]);
+            if (end > i) {
+                moveSlot(end, i);
+            }
+        }
+        count = reused;
+
+        ensureCapacity(newCount);
+        for (int k = 0; k < addedCount; k++) {
+            int j = added[k];
+            System.arraycopy(newBoxes, j * 4, boxes, count * 4, 4);
+            texts[count] = newTexts[j];
+            if (mappedTransform != null) {
+                mapSlots(count, count + 1, mappedTransform);
+            }
+            count++;
+        }
+        // Drops the texts of removed elements past the end.
+        Arrays.fill(texts, count, texts.length, null);
+
+        createdCount += addedCount;
+        reusedCount += reused;
+        removedCount += removed;
+        StageMetrics.add(StageMetrics.Counter.TEXT_ELEMENTS_CREATED, addedCount);
+        StageMetrics.add(StageMetrics.Counter.TEXT_ELEMENTS_REUSED, reused);
+        StageMetrics.add(StageMetrics.Counter.TEXT_ELEMENTS_REMOVED, removed);
+        if (addedCount == 0 && removed == 0) {
+            return false;
+        }
+        postInvalidate();
+        return true;
+    }
+
+    /**
+     * Returns the number of elements in the layer.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Highlights an element instead of the one highlighted before.
+     *
+     * @param index index of the element, or -1 to highlight none
+     */
+    public void setSelected(int index) {
+        if (index < -1 || index >= count) {
+            throw new IndexOutOfBoundsException("No element " + index);
+        }
+        if (index != selected) {
+            selected = index;
+            postInvalidate();
+        }
+    }
+
+    /**
+     * Returns the index of the highlighted element, or -1.
+     */
+    public int getSelected() {
+        return selected;
+    }
+
+    /**
+     * Returns the text of an element.
+     */
+    public String getText(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("No element " + index);
+        }
+        return texts[index];
+    }
+
+    /**
+     * Returns a copy of the boxes of all elements, in the order of their slots, for indexing them.
+     */
+    public float[] copyBoxes() {
+        return Arrays.copyOf(boxes, count * 4);
+    }
+
+    /**
+     * Returns how many elements were appended by updates.
+     */
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * Returns how many elements kept their slot in updates.
+     */
+    public long getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Returns how many elements were removed by updates.
+     */
+    public long getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * Draws the boxes and texts of all elements on the supplied canvas.
+     */
+    @Override
+    public void draw(Canvas canvas) {
+        mapToView();
+        if (selected >= 0) {
+            float x0 = viewBoxes[selected * 4];
+            float x1 = viewBoxes[selected * 4 + 2];
+            canvas.drawRect(Math.min(x0, x1), viewBoxes[selected * 4 + 1], Math.max(x0, x1),
+                    viewBoxes[selected * 4 + 3], SELECTED_PAINT);
+        }
+        canvas.drawLines(lines, 0, count * LINE_FLOATS_PER_BOX, RECT_PAINT);
+        for (int i = 0; i < count; i++) {
+            // Renders the text at the bottom of the box.
+            canvas.drawText(texts[i], textAnchors[i * 2], textAnchors[i * 2 + 1], TEXT_PAINT);
+        }
+    }
+
+    /**
+     * Returns the union of all boxes and texts in view coordinates.
+     */
+    @Override
+    public boolean getBounds(RectF outBounds) {
+        outBounds.setEmpty();
+        // Square caps extend the lines by half the stroke width.
+        float halfStroke = STROKE_WIDTH / 2;
+        Paint.FontMetrics fontMetrics = new Paint.FontMetrics();
+        TEXT_PAINT.getFontMetrics(fontMetrics);
+        GraphicOverlay.Transform transform = getTransform();
+        for (int i = 0; i < count; i++) {
+            float x0 = transform.mapX(boxes[i * 4]);
+            float x1 = transform.mapX(boxes[i * 4 + 2]);
+            float top = transform.mapY(boxes[i * 4 + 1]);
+            float bottom = transform.mapY(boxes[i * 4 + 3]);
+            float left = Math.min(x0, x1);
+            float right = Math.max(x0, x1);
+            outBounds.union(left - halfStroke, top - halfStroke, right + halfStroke,
+                    bottom + halfStroke);
+            outBounds.union(left, bottom + fontMetrics.top, left + TEXT_PAINT.measureText(texts[i]),
+                    bottom + fontMetrics.bottom);
+        }
+        return true;
+    }
+
+    /**
+     * Maps the boxes to view coordinates, unless they were already mapped with the current
+     * transform.
+     */
+    private void mapToView() {
+        GraphicOverlay.Transform transform = getTransform();
+        if (transform == mappedTransform) {
+            return;
+        }
+
+        mapSlots(0, count, transform);
+        mappedTransform = transform;
+    }
+
+    /**
+     * Maps the boxes of the given slots to view coordinates.
+     */
+    private void mapSlots(int from, int to, GraphicOverlay.Transform transform) {
+        // Left, top, right, bottom are two x, y pairs.
+        transform.mapPoints(viewBoxes, from * 4, boxes, from * 4, (to - from) * 2);
+        for (int i = from; i < to; i++) {
+            float x0 = viewBoxes[i * 4];
+            float y0 = viewBoxes[i * 4 + 1];
+            float x1 = viewBoxes[i * 4 + 2];
+            float y1 = viewBoxes[i * 4 + 3];
+
+            int l = i * LINE_FLOATS_PER_BOX;
+            setLine(l, x0, y0, x1, y0);
+            setLine(l + 4, x1, y0, x1, y1);
+            setLine(l + 8, x1, y1, x0, y1);
+            setLine(l + 12, x0, y1, x0, y0);
+
+            // The left edge of the box, which is the mapped right edge when mirrored.
+            textAnchors[i * 2] = Math.min(x0, x1);
+            textAnchors[i * 2 + 1] = y1;
+        }
+    }
+
+    /**
+     * Moves an element with its view coordinates and selection to another slot.
+     */
+    private void moveSlot(int from, int to) {
+        System.arraycopy(boxes, from * 4, boxes, to * 4, 4);
+        texts[to] = texts[from];
+        System.arraycopy(viewBoxes, from * 4, viewBoxes, to * 4, 4);
+        System.arraycopy(lines, from * LINE_FLOATS_PER_BOX, lines, to * LINE_FLOATS_PER_BOX,
+                LINE_FLOATS_PER_BOX);
+        System.arraycopy(textAnchors, from * 2, textAnchors, to * 2, 2);
+        if (selected == from) {
+            selected = to;
+        }
+    }
+
+    /**
+     * Grows the arrays to hold at least the given number of elements.
+     */
+    private void ensureCapacity(int capacity) {
+        if (texts.length >= capacity) {
+            return;
+        }
+        capacity = Math.max(capacity, texts.length + texts.length / 2);
+        boxes = Arrays.copyOf(boxes, capacity * 4);
+        texts = Arrays.copyOf(texts, capacity);
+        viewBoxes = Arrays.copyOf(viewBoxes, capacity * 4);
+        lines = Arrays.copyOf(lines, capacity * LINE_FLOATS_PER_BOX);
+        textAnchors = Arrays.copyOf(textAnchors, capacity * 2);
+    }
+
+    private void setLine(int offset, float startX, float startY, float stopX, float stopY) {
+        lines[offset] = startX;
+        lines[offset + 1] = startY;
+        lines[offset + 2] = stopX;
+        lines[offset + 3] = stopY;
+    }
+}
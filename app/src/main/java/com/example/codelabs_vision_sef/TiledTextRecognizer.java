@@ -0,0 +1,307 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.text.TextRecognizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Recognizes text in an image at its full resolution by splitting it into overlapping tiles, so
+ * small print survives that would be lost in an image scaled down to the screen.
+ * <p>
+ * <p>Tiles are decoded from the source one region at a time and recognized by a fixed number of
+ * threads, so at most that many tiles are in memory, however large the image. The elements found
+ * in all tiles are moved to image coordinates and merged: elements cut by the edge of their tile
+ * give way to the complete element found in the neighbouring tile, and elements found twice in the
+ * overlap are kept once. Text larger than the overlap can not be seen whole by any tile.
+ */
+public class TiledTextRecognizer implements LifecycleEventObserver {
+    private static final String TAG = "TiledTextRecognizer";
+    // Elements this close to an edge of their tile that is not an image edge are taken as cut.
+    private static final int CUT_MARGIN = 2;
+    // Share of the smaller of two boxes their intersection must cover for them to be one element.
+    private static final float DUPLICATE_OVERLAP = 0.7f;
+
+    /**
+     * Receives the result on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param text   elements in the coordinates of the full image, or null if it failed
+         * @param width  width of the full image
+         * @param height height of the full image
+         */
+        void onTextRecognized(RecognizedText text, int width, int height);
+    }
+
+    private final TextRecognizer recognizer;
+    private final int tileSize;
+    private final int overlap;
+    private final ExecutorService coordinator;
+    private final ExecutorService tileExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Creates a recognizer that stops when the given owner is destroyed.
+     *
+     * @param tileSize    width and height of the tiles, in image pixels
+     * @param overlap     pixels neighbouring tiles share, at least the size of the largest text
+     * @param parallelism tiles recognized at the same time
+     */
+    public TiledTextRecognizer(LifecycleOwner owner, TextRecognizer recognizer, int tileSize,
+                               int overlap, int parallelism) {
+        if (overlap < 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException("Overlap must be smaller than the tiles");
+        }
+        this.recognizer = recognizer;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        this.coordinator = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, TAG));
+        this.tileExecutor = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, TAG + "-tile"));
+        owner.getLifecycle().addObserver(this);
+    }
+
+    /**
+     * Recognizes the text of the source in the background.
+     */
+    public void recognize(BitmapDecoder.StreamOpener opener, Callback callback) {
+        coordinator.execute(() -> {
+            BitmapRegionDecoder decoder = null;
+            try (InputStream is = opener.open()) {
+                decoder = newDecoder(is);
+                int width = decoder.getWidth();
+                int height = decoder.getHeight();
+                RecognizedText text = recognize(decoder);
+                mainHandler.post(() -> callback.onTextRecognized(text, width, height));
+            } catch (IOException | ExecutionException e) {
+                Log.e(TAG, "Tiled text recognition failed", e);
+                mainHandler.post(() -> callback.onTextRecognized(null, 0, 0));
+            } catch (InterruptedException e) {
+                // Stopped, nobody waits for the result anymore.
+            } finally {
+                if (decoder != null) {
+                    decoder.recycle();
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newDecoder(InputStream is) throws IOException {
+        return BitmapRegionDecoder.newInstance(is, false);
+    }
+
+    private RecognizedText recognize(BitmapRegionDecoder decoder)
+            throws ExecutionException, InterruptedException {
+        long start = SystemClock.elapsedRealtime();
+        int[] tiles = computeTiles(decoder.getWidth(), decoder.getHeight(), tileSize, overlap);
+        List<Future<RecognizedText>> futures = new ArrayList<>();
+        for (int i = 0; i < tiles.length; i += 4) {
+            Rect tile = new Rect(tiles[i], tiles[i + 1], tiles[i + 2], tiles[i + 3]);
+            futures.add(tileExecutor.submit(() -> recognizeTile(decoder, tile)));
+        }
+        List<RecognizedText> results = new ArrayList<>(futures.size());
+        for (Future<RecognizedText> future : futures) {
+            results.add(future.get());
+        }
+        RecognizedText merged = merge(tiles, results, decoder.getWidth(), decoder.getHeight());
+        Log.d(TAG, "Recognized " + merged.getCount() + " elements in " + tiles.length / 4
+                + " tiles in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        return merged;
+    }
+
+    private RecognizedText recognizeTile(BitmapRegionDecoder decoder, Rect tile)
+            throws ExecutionException, InterruptedException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        // Region decoding is serialized by the decoder, recognition runs in parallel.
+        Bitmap bitmap = decoder.decodeRegion(tile, options);
+        if (bitmap == null) {
+            throw new ExecutionException(new IOException("Unable to decode tile " + tile));
+        }
+        try {
+            return RecognizedText.fromText(
+                    Tasks.await(recognizer.process(InputImage.fromBitmap(bitmap, 0))));
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Splits an image into tiles of at most the given size that overlap by at least the given
+     * number of pixels and cover it entirely.
+     *
+     * @return left, top, right and bottom of each tile
+     */
+    static int[] computeTiles(int width, int height, int tileSize, int overlap) {
+        int[] xs = tileStarts(width, tileSize, overlap);
+        int[] ys = tileStarts(height, tileSize, overlap);
+        int[] tiles = new int[xs.length * ys.length * 4];
+        int index = 0;
+        for (int y : ys) {
+            for (int x : xs) {
+                tiles[index++] = x;
+                tiles[index++] = y;
+                tiles[index++] = Math.min(x + tileSize, width);
+                tiles[index++] = Math.min(y + tileSize, height);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Spreads the tiles evenly along one axis, the first at 0 and the last ending at the end.
+     */
+    private static int[] tileStarts(int length, int tileSize, int overlap) {
+        if (length <= tileSize) {
+            return new int[]{0};
+        }
+        int stride = tileSize - overlap;
+        int count = (length - overlap + stride - 1) / stride;
+        int[] starts = new int[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = (int) ((long) i * (length - tileSize) / (count - 1));
+        }
+        return starts;
+    }
+
+    /**
+     * Moves the elements of every tile to image coordinates and removes the cut and duplicate ones.
+     *
+     * @param tiles   left, top, right and bottom of each tile
+     * @param results elements of each tile, in tile coordinates
+     */
+    static RecognizedText merge(int[] tiles, List<RecognizedText> results, int width,
+                                int height) {
+        List<float[]> boxes = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        List<Boolean> cut = new ArrayList<>();
+        // Elements no other tile can see are kept as they are; the rest are candidates.
+        List<Integer> candidates = new ArrayList<>();
+        for (int t = 0; t < results.size(); t++) {
+            int tileLeft = tiles[t * 4];
+            int tileTop = tiles[t * 4 + 1];
+            int tileRight = tiles[t * 4 + 2];
+            int tileBottom = tiles[t * 4 + 3];
+            RecognizedText result = results.get(t);
+            float[] tileBoxes = result.getBoxes();
+            for (int i = 0; i < result.getCount(); i++) {
+                float[] box = {
+                        tileBoxes[i * 4] + tileLeft, tileBoxes[i * 4 + 1] + tileTop,
+                        tileBoxes[i * 4 + 2] + tileLeft, tileBoxes[i * 4 + 3] + tileTop
+                };
+                boolean isCut = (tileLeft > 0 && box[0] <= tileLeft + CUT_MARGIN)
+                        || (tileTop > 0 && box[1] <= tileTop + CUT_MARGIN)
+                        || (tileRight < width && box[2] >= tileRight - CUT_MARGIN)
+                        || (tileBottom < height && box[3] >= tileBottom - CUT_MARGIN);
+                boxes.add(box);
+                texts.add(result.getTexts()[i]);
+                cut.add(isCut);
+                if (isCut || isSeenByOtherTile(box, tiles, t)) {
+                    candidates.add(boxes.size() - 1);
+                }
+            }
+        }
+
+        // Complete elements first, then larger ones, so they win over fragments of themselves.
+        candidates.sort((a, b) -> {
+            int byCut = Boolean.compare(cut.get(a), cut.get(b));
+            return byCut != 0 ? byCut : Float.compare(area(boxes.get(b)), area(boxes.get(a)));
+        });
+        boolean[] dropped = new boolean[boxes.size()];
+        List<float[]> accepted = new ArrayList<>();
+        for (int index : candidates) {
+            float[] box = boxes.get(index);
+            for (float[] other : accepted) {
+                if (intersectionOverSmaller(box, other) > DUPLICATE_OVERLAP) {
+                    dropped[index] = true;
+                    break;
+                }
+            }
+            if (!dropped[index]) {
+                accepted.add(box);
+            }
+        }
+
+        int count = 0;
+        for (boolean isDropped : dropped) {
+            if (!isDropped) {
+                count++;
+            }
+        }
+        float[] mergedBoxes = new float[count * 4];
+        String[] mergedTexts = new String[count];
+        int next = 0;
+        for (int i = 0; i < boxes.size(); i++) {
+            if (!dropped[i]) {
+                System.arraycopy(boxes.get(i), 0, mergedBoxes, next * 4, 4);
+                mergedTexts[next++] = texts.get(i);
+            }
+        }
+        return new RecognizedText(mergedBoxes, mergedTexts);
+    }
+
+    private static boolean isSeenByOtherTile(float[] box, int[] tiles, int tile) {
+        for (int t = 0; t < tiles.length / 4; t++) {
+            if (t != tile && box[0] < tiles[t * 4 + 2] && box[2] > tiles[t * 4]
+                    && box[1] < tiles[t * 4 + 3] && box[3] > tiles[t * 4 + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static float area(float[] box) {
+        return (box[2] - box[0]) * (box[3] - box[1]);
+    }
+
+    /**
+     * Returns the area of the intersection of two boxes divided by the area of the smaller one.
+     */
+    static float intersectionOverSmaller(float[] a, float[] b) {
+        float width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+        float height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        float smaller = Math.min(area(a), area(b));
+        return smaller <= 0 ? 1 : width * height / smaller;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            source.getLifecycle().removeObserver(this);
+            coordinator.shutdownNow();
+            tileExecutor.shutdownNow();
+        }
+    }
+}
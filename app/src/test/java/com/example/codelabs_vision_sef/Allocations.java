@@ -0,0 +1,32 @@
+package com.example.codelabs_vision_sef;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap bytes allocated by the current thread, using the allocation counter of the
+ * host JVM.
+ */
+final class Allocations {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    /**
+     * Runs the action the given number of times after warming it up, and returns the average number
+     * of bytes allocated per run.
+     */
+    static long bytesPerRun(int runs, Runnable action) {
+        for (int i = 0; i < runs; i++) {
+            action.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < runs; i++) {
+            action.run();
+        }
+        long after = THREADS.getThreadAllocatedBytes(threadId);
+        return (after - before) / runs;
+    }
+}
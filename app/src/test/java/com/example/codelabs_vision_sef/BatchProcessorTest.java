@@ -0,0 +1,63 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link BatchProcessor} finds the images of a directory.
+ */
+public class BatchProcessorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void walk_findsImagesInNameOrderDepthFirst() throws IOException {
+        File root = folder.getRoot();
+        folder.newFile("b.jpg");
+        folder.newFile("a.PNG");
+        folder.newFile("notes.txt");
+        folder.newFolder("c");
+        folder.newFile("c/d.webp");
+        folder.newFolder("c", "empty");
+        folder.newFile("e.jpeg");
+
+        List<String> names = new ArrayList<>();
+        Iterator<BatchProcessor.Item> items = BatchProcessor.walk(root);
+        while (items.hasNext()) {
+            names.add(new File(items.next().name).getPath()
+                    .substring(root.getPath().length() + 1).replace(File.separatorChar, '/'));
+        }
+        assertEquals(Arrays.asList("a.PNG", "b.jpg", "c/d.webp", "e.jpeg"), names);
+    }
+
+    @Test
+    public void walk_emptyOrMissingDirectory() {
+        assertFalse(BatchProcessor.walk(folder.getRoot()).hasNext());
+        assertFalse(BatchProcessor.walk(new File(folder.getRoot(), "missing")).hasNext());
+    }
+
+    @Test
+    public void isImage_matchesExtensionOnly() {
+        assertTrue(BatchProcessor.isImage(new File("photo.JPG")));
+        assertTrue(BatchProcessor.isImage(new File("dir.d/scan.heic")));
+        assertFalse(BatchProcessor.isImage(new File(".png")));
+        assertFalse(BatchProcessor.isImage(new File("jpg")));
+        assertFalse(BatchProcessor.isImage(new File("photo.jpg.txt")));
+    }
+
+    @Test
+    public void imagesPerSecond() {
+        assertEquals(50f, BatchProcessor.imagesPerSecond(100, 2_000_000_000L), 1e-3f);
+        assertEquals(0f, BatchProcessor.imagesPerSecond(100, 0), 0f);
+    }
+}
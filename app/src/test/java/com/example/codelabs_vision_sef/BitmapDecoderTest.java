@@ -0,0 +1,75 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sample size selection of {@link BitmapDecoder} and the peak bitmap memory it leads to
+ * for common camera resolutions, compared with decoding at full resolution before resizing.
+ */
+public class BitmapDecoderTest {
+    // Portrait phone screen, the usual ImageView target.
+    private static final int TARGET_WIDTH = 1080;
+    private static final int TARGET_HEIGHT = 1920;
+
+    private static final int[][] SOURCES = {
+            {4000, 3000},  // 12 MP
+            {6000, 4000},  // 24 MP
+            {8000, 6000},  // 48 MP
+            {3000, 4000},  // 12 MP portrait
+    };
+
+    @Test
+    public void sampleSize_isPowerOfTwoNotLargerThanScaleFactor() {
+        for (int[] source : SOURCES) {
+            int sampleSize = BitmapDecoder.calculateInSampleSize(source[0], source[1],
+                    TARGET_WIDTH, TARGET_HEIGHT);
+            float scaleFactor = Math.max((float) source[0] / TARGET_WIDTH,
+                    (float) source[1] / TARGET_HEIGHT);
+
+            assertEquals(0, sampleSize & (sampleSize - 1));
+            assertTrue(sampleSize <= scaleFactor);
+            assertTrue(sampleSize * 2 > scaleFactor);
+        }
+    }
+
+    @Test
+    public void sampleSize_isOneForSmallOrUnknownTargets() {
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(800, 600, TARGET_WIDTH, TARGET_HEIGHT));
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(8000, 6000, 0, 0));
+    }
+
+    @Test
+    public void sampledImage_coversResizedImage() {
+        for (int[] source : SOURCES) {
+            int sampleSize = BitmapDecoder.calculateInSampleSize(source[0], source[1],
+                    TARGET_WIDTH, TARGET_HEIGHT);
+            assertTrue(BitmapDecoder.estimateDecodedBytes(source[0], source[1], sampleSize)
+                    >= BitmapDecoder.estimateResizedBytes(source[0], source[1],
+                    TARGET_WIDTH, TARGET_HEIGHT));
+        }
+    }
+
+    @Test
+    public void peakAllocation_perSourceSize() {
+        // Sample sizes of the sources, and the most their sampled peak may be of the full one.
+        int[] expectedSampleSizes = {2, 4, 4, 2};
+        double[] maxPeakRatios = {0.31, 0.1, 0.08, 0.34};
+
+        for (int i = 0; i < SOURCES.length; i++) {
+            int width = SOURCES[i][0];
+            int height = SOURCES[i][1];
+            int sampleSize = BitmapDecoder.calculateInSampleSize(width, height,
+                    TARGET_WIDTH, TARGET_HEIGHT);
+            assertEquals(expectedSampleSizes[i], sampleSize);
+
+            long fullPeak = BitmapDecoder.estimatePeakBytes(width, height,
+                    TARGET_WIDTH, TARGET_HEIGHT, 1);
+            long sampledPeak = BitmapDecoder.estimatePeakBytes(width, height,
+                    TARGET_WIDTH, TARGET_HEIGHT, sampleSize);
+            assertTrue(width + "x" + height + " peaks at " + sampledPeak + " of " + fullPeak
+                    + " bytes", sampledPeak <= fullPeak * maxPeakRatios[i]);
+        }
+    }
+}
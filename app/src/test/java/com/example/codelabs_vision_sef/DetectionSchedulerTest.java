@@ -0,0 +1,93 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link DetectionScheduler} paces submissions and degrades detection from the
+ * latencies it measures.
+ */
+public class DetectionSchedulerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BUDGET = 100 * MS;
+
+    @Test
+    public void tryAcquire_limitsDetectionsInFlight() {
+        DetectionScheduler scheduler = new DetectionScheduler(2, BUDGET);
+
+        assertTrue(scheduler.tryAcquire(0));
+        assertTrue(scheduler.tryAcquire(0));
+        assertFalse(scheduler.tryAcquire(0));
+        assertEquals(2, scheduler.getInFlightCount());
+
+        scheduler.onFailed();
+        assertTrue(scheduler.tryAcquire(0));
+    }
+
+    @Test
+    public void submitInterval_followsAverageLatency() {
+        DetectionScheduler scheduler = new DetectionScheduler(2, BUDGET);
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            assertTrue(scheduler.tryAcquire(now));
+            scheduler.onComplete(60 * MS);
+            now += 60 * MS;
+        }
+
+        assertEquals(60 * MS, scheduler.getAverageLatencyNanos());
+        // Two detections of 60 ms each overlap, so one can start every 30 ms.
+        assertEquals(30 * MS, scheduler.getSubmitIntervalNanos());
+        assertTrue(scheduler.tryAcquire(now));
+        assertFalse(scheduler.tryAcquire(now + 29 * MS));
+        assertTrue(scheduler.tryAcquire(now + 30 * MS));
+    }
+
+    @Test
+    public void percentiles_useNearestRank() {
+        DetectionScheduler scheduler = new DetectionScheduler(1, Long.MAX_VALUE);
+        assertEquals(0, scheduler.getLatencyPercentileNanos(50));
+        for (int i = 1; i <= 10; i++) {
+            scheduler.tryAcquire(Long.MAX_VALUE);
+            scheduler.onComplete(i * MS);
+        }
+
+        assertEquals(5 * MS, scheduler.getLatencyPercentileNanos(50));
+        assertEquals(9 * MS, scheduler.getLatencyPercentileNanos(90));
+        assertEquals(10 * MS, scheduler.getLatencyPercentileNanos(100));
+    }
+
+    @Test
+    public void degrades_whenBehindBudget_andRecoversWithHysteresis() {
+        DetectionScheduler scheduler = new DetectionScheduler(1, BUDGET);
+
+        complete(scheduler, DetectionScheduler.MIN_DEGRADE_SAMPLES - 1, 150 * MS);
+        assertFalse(scheduler.isDegraded());
+        complete(scheduler, 1, 150 * MS);
+        assertTrue(scheduler.isDegraded());
+
+        // Under the budget, but not far enough below it to switch back.
+        complete(scheduler, DetectionScheduler.WINDOW * 2, 70 * MS);
+        assertTrue(scheduler.isDegraded());
+
+        // The 90th percentile of the window stays 70 ms while more than 3 of its 32 samples are.
+        complete(scheduler, DetectionScheduler.WINDOW - 4, 40 * MS);
+        assertTrue(scheduler.isDegraded());
+        complete(scheduler, 1, 40 * MS);
+        assertFalse(scheduler.isDegraded());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void onComplete_withoutAcquire_throws() {
+        new DetectionScheduler(1, BUDGET).onComplete(MS);
+    }
+
+    private static void complete(DetectionScheduler scheduler, int count, long latencyNanos) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(scheduler.tryAcquire(Long.MAX_VALUE));
+            scheduler.onComplete(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests of {@link FaceContourGraphic}, run against the stubbed Android classes.
+ */
+public class FaceContourGraphicTest {
+    private static final int FRAMES = 1000;
+
+    @Test
+    public void draw_allocatesNothingPerFrame() {
+        FaceContourGraphic graphic = new FaceContourGraphic(new GraphicOverlay(null, null));
+        graphic.updateFaceInfo(100, 100, 300, 300, 7, 0.87f, 0.5f, 0.25f);
+        Canvas canvas = new Canvas();
+
+        assertEquals(0, Allocations.bytesPerRun(FRAMES, () -> graphic.draw(canvas)));
+    }
+
+    @Test
+    public void draw_allocatesNothingPerFrameWhileMoving() {
+        FaceContourGraphic graphic = new FaceContourGraphic(new GraphicOverlay(null, null));
+        // The stubbed clock is always at 0, right after the second detection.
+        long ms = 1_000_000L;
+        graphic.updateFaceInfo(100, 100, 300, 300, 7, 0.87f, 0.5f, 0.25f, -100 * ms);
+        graphic.updateFaceInfo(150, 120, 350, 320, 7, 0.9f, 0.5f, 0.25f, 0);
+        Canvas canvas = new Canvas();
+
+        assertEquals(0, Allocations.bytesPerRun(FRAMES, () -> graphic.draw(canvas)));
+    }
+
+    @Test
+    public void appendFixedPoint_matchesStringFormat() {
+        float[] values = {0f, 0.004f, 0.005f, 0.125f, 0.5f, 0.875f, 0.999f, 1f, 12.345f, -0.25f};
+        for (float value : values) {
+            assertEquals(String.format(java.util.Locale.US, "%.2f", value), format(value));
+        }
+    }
+
+    @Test
+    public void appendInt_writesAllDigits() {
+        char[] dest = new char[16];
+        int[] values = {0, 7, 42, 1000, -13, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int value : values) {
+            int end = FaceContourGraphic.appendInt(value, dest, 2);
+            assertEquals(Integer.toString(value), new String(dest, 2, end - 2));
+        }
+    }
+
+    private static String format(float value) {
+        char[] dest = new char[16];
+        int end = FaceContourGraphic.appendFixedPoint(value, dest, 0);
+        return new String(dest, 0, end);
+    }
+}
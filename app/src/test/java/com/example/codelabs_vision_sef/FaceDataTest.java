@@ -0,0 +1,57 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link FaceData} survives being written and read back, as the detection cache does.
+ */
+public class FaceDataTest {
+
+    @Test
+    public void readListFrom_returnsWrittenFaces() throws IOException {
+        List<FaceData> faces = Arrays.asList(
+                new FaceData(10, 20, 110, 140, new float[]{15, 25, 50.5f, 60.25f}, 3, 0.9f,
+                        0.5f, 0.25f),
+                new FaceData(200, 210, 260, 290, new float[0], null, null, null, null));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FaceData.writeListTo(faces, new DataOutputStream(bytes));
+        List<FaceData> read = FaceData.readListFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(faces.size(), read.size());
+        for (int i = 0; i < faces.size(); i++) {
+            FaceData expected = faces.get(i);
+            FaceData actual = read.get(i);
+            assertEquals(expected.left, actual.left, 0);
+            assertEquals(expected.top, actual.top, 0);
+            assertEquals(expected.right, actual.right, 0);
+            assertEquals(expected.bottom, actual.bottom, 0);
+            assertArrayEquals(expected.points, actual.points, 0);
+            assertEquals(expected.trackingId, actual.trackingId);
+            assertEquals(expected.smilingProbability, actual.smilingProbability);
+            assertEquals(expected.rightEyeOpenProbability, actual.rightEyeOpenProbability);
+            assertEquals(expected.leftEyeOpenProbability, actual.leftEyeOpenProbability);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsTruncatedData() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new FaceData(0, 0, 1, 1, new float[]{1, 2}, 1, null, null, null)
+                .writeTo(new DataOutputStream(bytes));
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+
+        FaceData.readFrom(new DataInputStream(new ByteArrayInputStream(truncated)));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.codelabs_vision_sef;
+
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the names {@link DetectionCache} keys results by depend on the settings only.
+ */
+public class FaceDetectorSettingsTest {
+
+    private static FaceDetectorSettings contours() {
+        return new FaceDetectorSettings.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
+                .build();
+    }
+
+    @Test
+    public void getName_isTheSameForSeparatelyBuiltEqualSettings() {
+        FaceDetectorSettings first = contours();
+        FaceDetectorSettings second = contours();
+
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(first.getName(), second.getName());
+        assertEquals("face-fast-contours-min0.10", first.getName());
+    }
+
+    @Test
+    public void getName_differsForDifferentSettings() {
+        FaceDetectorSettings landmarks = new FaceDetectorSettings.Builder()
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                .enableTracking()
+                .build();
+        FaceDetectorSettings accurate = new FaceDetectorSettings.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
+                .setMinFaceSize(0.25f)
+                .build();
+
+        assertEquals("face-fast-landmarks-tracking-min0.10", landmarks.getName());
+        assertEquals("face-accurate-contours-classification-min0.25", accurate.getName());
+        assertNotEquals(contours(), landmarks);
+        assertNotEquals(contours().getName(), accurate.getName());
+    }
+}
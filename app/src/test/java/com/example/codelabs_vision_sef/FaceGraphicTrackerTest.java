@@ -0,0 +1,39 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link FaceGraphicTracker} keeps the graphic of a face by its tracking id.
+ */
+public class FaceGraphicTrackerTest {
+
+    private static FaceData newFace(float left, Integer trackingId) {
+        return new FaceData(left, 100, left + 200, 300, new float[0], trackingId, null, null,
+                null);
+    }
+
+    @Test
+    public void update_matchesFacesByTrackingId() {
+        GraphicOverlay overlay = new GraphicOverlay(null, null);
+        FaceGraphicTracker tracker = new FaceGraphicTracker(overlay);
+        List<FaceContourGraphic> first = tracker.update(Arrays.asList(newFace(0, 1),
+                newFace(500, 2)));
+        // The faces moved and swapped order, a third one appeared.
+        List<FaceContourGraphic> second = tracker.update(Arrays.asList(newFace(520, 2),
+                newFace(700, 3), newFace(20, 1)));
+
+        assertSame(first.get(1), second.get(0));
+        assertSame(first.get(0), second.get(2));
+        assertEquals(3, tracker.getCreatedCount());
+        assertEquals(2, tracker.getReusedCount());
+
+        tracker.update(Collections.singletonList(newFace(40, 1)));
+        assertEquals(2, tracker.getEvictedCount());
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.hardware.camera2.CameraCharacteristics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests of the {@link GraphicOverlay.Transform} the overlay publishes, of the regions it
+ * invalidates and draws, and of recording its graphics, run against the stubbed Android classes.
+ */
+public class GraphicOverlayTest {
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+
+    /**
+     * Counts how often it is drawn.
+     */
+    private static class CountingGraphic extends GraphicOverlay.Graphic {
+        int drawCount;
+
+        CountingGraphic(GraphicOverlay overlay) {
+            super(overlay);
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            drawCount++;
+        }
+    }
+
+    /**
+     * Reports the bounds it is given, or unknown bounds.
+     */
+    private static class BoxGraphic extends CountingGraphic {
+        boolean known = true;
+        float left;
+        float top;
+        float right;
+        float bottom;
+
+        BoxGraphic(GraphicOverlay overlay, float left, float top, float right, float bottom) {
+            super(overlay);
+            moveTo(left, top, right, bottom);
+        }
+
+        void moveTo(float left, float top, float right, float bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public boolean getBounds(RectF outBounds) {
+            outBounds.left = left;
+            outBounds.top = top;
+            outBounds.right = right;
+            outBounds.bottom = bottom;
+            return known;
+        }
+    }
+
+    /**
+     * Records what the overlay invalidates.
+     */
+    private static class InvalidationOverlay extends GraphicOverlay {
+        int fullCount;
+        int regionCount;
+        int[] lastRegion;
+
+        InvalidationOverlay() {
+            super(null, null);
+        }
+
+        @Override
+        public void postInvalidate() {
+            fullCount++;
+        }
+
+        @Override
+        public void postInvalidate(int left, int top, int right, int bottom) {
+            regionCount++;
+            lastRegion = new int[]{left, top, right, bottom};
+        }
+    }
+
+    /**
+     * A canvas clipped to a rectangle, like the one a partial invalidation draws with.
+     */
+    private static class ClippedCanvas extends Canvas {
+        private final int[] clip;
+
+        ClippedCanvas(int left, int top, int right, int bottom) {
+            clip = new int[]{left, top, right, bottom};
+        }
+
+        @Override
+        public boolean getClipBounds(Rect bounds) {
+            bounds.left = clip[0];
+            bounds.top = clip[1];
+            bounds.right = clip[2];
+            bounds.bottom = clip[3];
+            return true;
+        }
+    }
+
+    private static GraphicOverlay newOverlay() {
+        GraphicOverlay overlay = new GraphicOverlay(null, null);
+        overlay.onSizeChanged(VIEW_WIDTH, VIEW_HEIGHT, 0, 0);
+        return overlay;
+    }
+
+    @Test
+    public void transform_scalesAndMirrorsLikeTheViewSize() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.setCameraInfo(540, 480, CameraCharacteristics.LENS_FACING_BACK);
+        GraphicOverlay.Transform back = overlay.getTransform();
+        assertEquals(20, back.mapX(10), 0);
+        assertEquals(40, back.mapY(10), 0);
+        assertFalse(back.isMirrored());
+
+        overlay.setCameraInfo(540, 480, CameraCharacteristics.LENS_FACING_FRONT);
+        GraphicOverlay.Transform front = overlay.getTransform();
+        assertEquals(VIEW_WIDTH - 20, front.mapX(10), 0);
+        assertEquals(40, front.mapY(10), 0);
+        assertEquals(20, front.scaleX(10), 0);
+        assertTrue(front.isMirrored());
+    }
+
+    @Test
+    public void unmap_invertsTheTransform() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_FRONT);
+        GraphicOverlay.Transform transform = overlay.getTransform();
+        assertEquals(1234, transform.unmapX(transform.mapX(1234)), 1e-2f);
+        assertEquals(2345, transform.unmapY(transform.mapY(2345)), 1e-2f);
+    }
+
+    @Test
+    public void transform_isOnlyReplacedWhenItChanges() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_BACK);
+        GraphicOverlay.Transform transform = overlay.getTransform();
+
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_BACK);
+        overlay.add(new TextLayerGraphic(overlay, new float[4], new String[1]));
+        assertSame(transform, overlay.getTransform());
+
+        overlay.onSizeChanged(VIEW_WIDTH / 2, VIEW_HEIGHT / 2, VIEW_WIDTH, VIEW_HEIGHT);
+        assertNotSame(transform, overlay.getTransform());
+        assertEquals(transform.mapX(100) / 2, overlay.getTransform().mapX(100), 1e-3f);
+    }
+
+    @Test
+    public void mapPoints_matchesMappingEachCoordinate() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_FRONT);
+        GraphicOverlay.Transform transform = overlay.getTransform();
+        float[] points = new float[2 * 137];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i * 17.5f;
+        }
+        float[] mapped = new float[points.length + 2];
+        transform.mapPoints(mapped, 2, points, 0, points.length / 2);
+
+        for (int i = 0; i < points.length; i += 2) {
+            assertEquals(transform.mapX(points[i]), mapped[i + 2], 0);
+            assertEquals(transform.mapY(points[i + 1]), mapped[i + 3], 0);
+        }
+        transform.mapPoints(points);
+        for (int i = 0; i < points.length; i++) {
+            assertEquals(mapped[i + 2], points[i], 0);
+        }
+    }
+
+    @Test
+    public void mapRect_keepsLeftOfRightWhenMirrored() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.setCameraInfo(VIEW_WIDTH, VIEW_HEIGHT, CameraCharacteristics.LENS_FACING_FRONT);
+        RectF rect = new RectF();
+        rect.left = 10;
+        rect.top = 20;
+        rect.right = 30;
+        rect.bottom = 40;
+        overlay.getTransform().mapRect(rect);
+
+        assertEquals(VIEW_WIDTH - 30, rect.left, 0);
+        assertEquals(20, rect.top, 0);
+        assertEquals(VIEW_WIDTH - 10, rect.right, 0);
+        assertEquals(40, rect.bottom, 0);
+    }
+
+    @Test
+    public void onDraw_replaysGraphicsThatDidNotChange() {
+        GraphicOverlay overlay = newOverlay();
+        CountingGraphic graphic = new CountingGraphic(overlay);
+        overlay.add(graphic);
+
+        overlay.onDraw(new Canvas());
+        assertFalse(overlay.isLastFrameReplayed());
+        // Unchanged since the last frame, recorded and replayed.
+        overlay.onDraw(new Canvas());
+        assertTrue(overlay.isLastFrameReplayed());
+        assertEquals(2, graphic.drawCount);
+        overlay.onDraw(new Canvas());
+        overlay.onDraw(new Canvas());
+        assertTrue(overlay.isLastFrameReplayed());
+        assertEquals(0, overlay.getLastFrameDrawnCount());
+        assertEquals(2, graphic.drawCount);
+        assertEquals(3, overlay.getReplayedCount());
+    }
+
+    @Test
+    public void onDraw_drawsAgainAfterAChange() {
+        GraphicOverlay overlay = newOverlay();
+        CountingGraphic graphic = new CountingGraphic(overlay);
+        overlay.add(graphic);
+        overlay.onDraw(new Canvas());
+        overlay.onDraw(new Canvas());
+        int drawCount = graphic.drawCount;
+
+        overlay.setCameraInfo(540, 960, CameraCharacteristics.LENS_FACING_BACK);
+        overlay.onDraw(new Canvas());
+        assertFalse(overlay.isLastFrameReplayed());
+        assertEquals(++drawCount, graphic.drawCount);
+
+        graphic.postInvalidate();
+        overlay.onDraw(new Canvas());
+        assertFalse(overlay.isLastFrameReplayed());
+        assertEquals(++drawCount, graphic.drawCount);
+
+        graphic.postInvalidateOnAnimation();
+        overlay.onDraw(new Canvas());
+        assertFalse(overlay.isLastFrameReplayed());
+
+        overlay.add(new CountingGraphic(overlay));
+        overlay.onDraw(new Canvas());
+        assertFalse(overlay.isLastFrameReplayed());
+        assertEquals(2, overlay.getLastFrameDrawnCount());
+    }
+
+    @Test
+    public void onDraw_drawsEveryFrameWithRecordingDisabled() {
+        GraphicOverlay overlay = newOverlay();
+        CountingGraphic graphic = new CountingGraphic(overlay);
+        overlay.add(graphic);
+        overlay.onDraw(new Canvas());
+        overlay.onDraw(new Canvas());
+
+        overlay.setRecordingEnabled(false);
+        overlay.onDraw(new Canvas());
+        overlay.onDraw(new Canvas());
+        assertFalse(overlay.isLastFrameReplayed());
+        assertEquals(4, graphic.drawCount);
+    }
+
+    @Test
+    public void invalidateGraphic_coversTheOldAndTheNewBounds() {
+        InvalidationOverlay overlay = new InvalidationOverlay();
+        overlay.onSizeChanged(VIEW_WIDTH, VIEW_HEIGHT, 0, 0);
+        BoxGraphic graphic = new BoxGraphic(overlay, 10, 20, 30, 40);
+        overlay.add(graphic);
+        assertArrayEquals(new int[]{10, 20, 30, 40}, overlay.lastRegion);
+
+        graphic.moveTo(100.5f, 200, 150, 260.2f);
+        graphic.postInvalidate();
+        // Rounded out to whole pixels.
+        assertArrayEquals(new int[]{10, 20, 150, 261}, overlay.lastRegion);
+
+        // Only the new bounds once it did not move.
+        graphic.postInvalidate();
+        assertArrayEquals(new int[]{100, 200, 150, 261}, overlay.lastRegion);
+
+        overlay.remove(graphic);
+        assertArrayEquals(new int[]{100, 200, 150, 261}, overlay.lastRegion);
+        assertEquals(4, overlay.regionCount);
+        assertEquals(0, overlay.fullCount);
+    }
+
+    @Test
+    public void invalidateGraphic_invalidatesEverythingForUnknownBounds() {
+        InvalidationOverlay overlay = new InvalidationOverlay();
+        overlay.onSizeChanged(VIEW_WIDTH, VIEW_HEIGHT, 0, 0);
+        BoxGraphic graphic = new BoxGraphic(overlay, 10, 20, 30, 40);
+        graphic.known = false;
+        overlay.add(graphic);
+        assertEquals(1, overlay.fullCount);
+
+        // Where it was is still unknown.
+        graphic.known = true;
+        graphic.postInvalidate();
+        assertEquals(2, overlay.fullCount);
+
+        graphic.postInvalidate();
+        assertEquals(2, overlay.fullCount);
+        assertArrayEquals(new int[]{10, 20, 30, 40}, overlay.lastRegion);
+
+        graphic.known = false;
+        graphic.postInvalidate();
+        assertEquals(3, overlay.fullCount);
+        assertEquals(1, overlay.regionCount);
+    }
+
+    @Test
+    public void onDraw_skipsGraphicsOutsideTheClip() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.setRecordingEnabled(false);
+        BoxGraphic inside = new BoxGraphic(overlay, 0, 0, 100, 100);
+        BoxGraphic outside = new BoxGraphic(overlay, 500, 500, 600, 600);
+        // Rounded out, so it reaches into the clip.
+        BoxGraphic edge = new BoxGraphic(overlay, 199.5f, 0, 300, 100);
+        BoxGraphic unknown = new BoxGraphic(overlay, 500, 500, 600, 600);
+        unknown.known = false;
+        overlay.beginTransaction().add(inside).add(outside).add(edge).add(unknown).commit();
+
+        overlay.onDraw(new ClippedCanvas(0, 0, 200, 200));
+        assertEquals(3, overlay.getLastFrameDrawnCount());
+        assertEquals(1, overlay.getLastFrameSkippedCount());
+        assertEquals(0, outside.drawCount);
+        assertEquals(1, unknown.drawCount);
+
+        overlay.onDraw(new ClippedCanvas(450, 450, 550, 550));
+        assertEquals(2, overlay.getLastFrameDrawnCount());
+        assertEquals(2, overlay.getLastFrameSkippedCount());
+        assertEquals(1, outside.drawCount);
+
+        // Without a clip everything is drawn.
+        overlay.onDraw(new Canvas());
+        assertEquals(4, overlay.getLastFrameDrawnCount());
+        assertEquals(0, overlay.getLastFrameSkippedCount());
+        assertEquals(9, overlay.getDrawnCount());
+        assertEquals(3, overlay.getSkippedCount());
+    }
+}
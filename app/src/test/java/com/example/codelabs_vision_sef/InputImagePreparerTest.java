@@ -0,0 +1,123 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the NV21 encoding of {@link InputImagePreparer} and the reuse of its buffers.
+ */
+public class InputImagePreparerTest {
+    private static final int WHITE = 0xffffffff;
+    private static final int BLACK = 0xff000000;
+    private static final int RED = 0xffff0000;
+
+    /**
+     * Encodes two rows of the given width filled with one color.
+     *
+     * @return luma of the first pixel, V and U of the first block
+     */
+    private static int[] encodeUniform(int color, int width) {
+        int[] pixels = new int[width * 2];
+        Arrays.fill(pixels, color);
+        byte[] luma = new byte[width * 2];
+        byte[] chroma = new byte[width];
+        InputImagePreparer.encodeRowPair(pixels, width, luma, chroma);
+        for (int i = 1; i < luma.length; i++) {
+            assertEquals(luma[0], luma[i]);
+        }
+        for (int i = 2; i < chroma.length; i++) {
+            assertEquals(chroma[i % 2], chroma[i]);
+        }
+        return new int[]{luma[0] & 0xff, chroma[0] & 0xff, chroma[1] & 0xff};
+    }
+
+    @Test
+    public void encodeRowPair_usesStudioRangeBt601() {
+        assertArrayEquals(new int[]{235, 128, 128}, encodeUniform(WHITE, 4));
+        assertArrayEquals(new int[]{16, 128, 128}, encodeUniform(BLACK, 4));
+        assertArrayEquals(new int[]{82, 240, 90}, encodeUniform(RED, 4));
+    }
+
+    @Test
+    public void encodeRowPair_averagesChromaOverBlocks() {
+        // A block of two red and two black pixels, then a white one.
+        int[] pixels = {
+                RED, BLACK, WHITE, WHITE,
+                BLACK, RED, WHITE, WHITE};
+        byte[] luma = new byte[8];
+        byte[] chroma = new byte[4];
+        InputImagePreparer.encodeRowPair(pixels, 4, luma, chroma);
+
+        assertEquals(82, luma[0] & 0xff);
+        assertEquals(16, luma[1] & 0xff);
+        assertEquals(16, luma[4] & 0xff);
+        assertEquals(82, luma[5] & 0xff);
+        assertEquals(235, luma[2] & 0xff);
+        int[] average = encodeUniform(0xff800000, 2);
+        assertEquals(average[1], chroma[0] & 0xff);
+        assertEquals(average[2], chroma[1] & 0xff);
+        assertEquals(128, chroma[2] & 0xff);
+        assertEquals(128, chroma[3] & 0xff);
+    }
+
+    @Test
+    public void bufferSize_holdsLumaAndQuarterResolutionChroma() {
+        assertEquals(4 * 2 + 4, Nv21Image.bufferSize(4, 2));
+        assertEquals(640 * 480 * 3 / 2, Nv21Image.bufferSize(640, 480));
+    }
+
+    @Test
+    public void pool_reusesBuffersUpToFourTimesLarger() {
+        ByteBufferPool pool = new ByteBufferPool(2);
+        ByteBuffer buffer = pool.acquire(1000);
+        assertTrue(buffer.isDirect());
+        assertEquals(1000, buffer.limit());
+        pool.release(buffer);
+
+        assertNotSame(buffer, pool.acquire(249));
+        ByteBuffer reused = pool.acquire(250);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(250, reused.limit());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void pool_dropsTheSmallestBufferWhenFull() {
+        ByteBufferPool pool = new ByteBufferPool(2);
+        ByteBuffer small = pool.acquire(10);
+        ByteBuffer medium = pool.acquire(20);
+        ByteBuffer large = pool.acquire(30);
+        pool.release(medium);
+        pool.release(small);
+        pool.release(large);
+
+        assertSame(medium, pool.acquire(10));
+        assertSame(large, pool.acquire(10));
+        assertNotSame(small, pool.acquire(10));
+    }
+
+    @Test
+    public void image_returnsItsBufferWhenTheLastReferenceIsReleased() {
+        ByteBufferPool pool = new ByteBufferPool(1);
+        ByteBuffer buffer = pool.acquire(Nv21Image.bufferSize(4, 2));
+        Nv21Image image = new Nv21Image(buffer, 4, 2, pool);
+
+        image.retain();
+        image.release();
+        assertNotSame(buffer, pool.acquire(buffer.capacity()));
+
+        image.release();
+        assertSame(buffer, pool.acquire(buffer.capacity()));
+        try {
+            image.retain();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
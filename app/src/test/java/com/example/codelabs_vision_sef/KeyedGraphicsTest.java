@@ -0,0 +1,104 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link KeyedGraphics} keeps the graphics of keys found again and only adds and
+ * removes the others, run against the stubbed Android classes.
+ */
+public class KeyedGraphicsTest {
+    /**
+     * Binds numbers to empty text layers, keyed by the number.
+     */
+    private static final KeyedGraphics.Binder<Integer, TextLayerGraphic> BINDER =
+            new KeyedGraphics.Binder<Integer, TextLayerGraphic>() {
+                @Override
+                public Object keyOf(Integer item) {
+                    return item;
+                }
+
+                @Override
+                public TextLayerGraphic create(GraphicOverlay overlay, Integer item) {
+                    return new TextLayerGraphic(overlay, new float[0], new String[0]);
+                }
+
+                @Override
+                public void update(TextLayerGraphic graphic, Integer item) {
+                }
+            };
+
+    private static GraphicOverlay newOverlay() {
+        GraphicOverlay overlay = new GraphicOverlay(null, null);
+        overlay.onSizeChanged(1080, 1920, 0, 0);
+        return overlay;
+    }
+
+    private static int drawnCount(GraphicOverlay overlay) {
+        overlay.onDraw(new Canvas());
+        return overlay.getLastFrameDrawnCount();
+    }
+
+    @Test
+    public void update_reusesGraphicsOfKeysFoundAgain() {
+        GraphicOverlay overlay = newOverlay();
+        KeyedGraphics<Integer, TextLayerGraphic> graphics = new KeyedGraphics<>(overlay, BINDER);
+        List<TextLayerGraphic> first = graphics.update(Arrays.asList(1, 2, 3));
+        List<TextLayerGraphic> second = graphics.update(Arrays.asList(3, 4, 1));
+
+        assertSame(first.get(2), second.get(0));
+        assertSame(first.get(0), second.get(2));
+        assertNotSame(first.get(1), second.get(1));
+        assertSame(second.get(1), graphics.get(4));
+        assertNull(graphics.get(2));
+        assertEquals(4, graphics.getCreatedCount());
+        assertEquals(2, graphics.getReusedCount());
+        assertEquals(1, graphics.getRemovedCount());
+        assertEquals(3, drawnCount(overlay));
+    }
+
+    @Test
+    public void update_leavesOtherGraphicsInTheOverlay() {
+        GraphicOverlay overlay = newOverlay();
+        overlay.add(new TextLayerGraphic(overlay, new float[0], new String[0]));
+        KeyedGraphics<Integer, TextLayerGraphic> graphics = new KeyedGraphics<>(overlay, BINDER);
+        graphics.update(Arrays.asList(1, 2));
+        assertEquals(3, drawnCount(overlay));
+
+        graphics.clear();
+        assertEquals(1, drawnCount(overlay));
+        assertEquals(2, graphics.getRemovedCount());
+    }
+
+    @Test
+    public void update_keepsAGraphicPerItemWithADuplicateKey() {
+        GraphicOverlay overlay = newOverlay();
+        KeyedGraphics<Integer, TextLayerGraphic> graphics = new KeyedGraphics<>(overlay, BINDER);
+        List<TextLayerGraphic> first = graphics.update(Arrays.asList(7, 7));
+        assertNotSame(first.get(0), first.get(1));
+        assertEquals(2, drawnCount(overlay));
+
+        List<TextLayerGraphic> second = graphics.update(Collections.singletonList(7));
+        assertSame(first.get(0), second.get(0));
+        assertEquals(1, drawnCount(overlay));
+    }
+
+    @Test
+    public void update_addsGraphicsBackAfterTheOverlayWasCleared() {
+        GraphicOverlay overlay = newOverlay();
+        KeyedGraphics<Integer, TextLayerGraphic> graphics = new KeyedGraphics<>(overlay, BINDER);
+        graphics.update(Arrays.asList(1, 2));
+        overlay.clear();
+
+        graphics.update(Arrays.asList(1, 2));
+        assertEquals(2, graphics.getReusedCount());
+        assertEquals(2, drawnCount(overlay));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bucket layout and the percentiles of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+    // Largest share of its value a bucket is wide.
+    private static final double PRECISION = 1.0 / LatencyHistogram.SUB_BUCKET_COUNT;
+
+    @Test
+    public void buckets_containTheirValuesAndTileTheRange() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index >= 0 && index < LatencyHistogram.BUCKET_COUNT);
+            assertTrue(LatencyHistogram.lowestValueOf(index) <= value);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+        }
+        for (int index = 1; index < LatencyHistogram.BUCKET_COUNT; index++) {
+            assertEquals(LatencyHistogram.highestValueOf(index - 1) + 1,
+                    LatencyHistogram.lowestValueOf(index));
+        }
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.highestValueOf(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void buckets_areNarrowRelativeToTheirValues() {
+        for (int index = LatencyHistogram.SUB_BUCKET_COUNT;
+             index < LatencyHistogram.BUCKET_COUNT; index++) {
+            long lowest = LatencyHistogram.lowestValueOf(index);
+            long width = LatencyHistogram.highestValueOf(index) - lowest + 1;
+            assertTrue(width <= lowest * PRECISION);
+        }
+    }
+
+    @Test
+    public void percentiles_matchSortedValuesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        List<Long> values = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            // Log-normal around 20 ms, like detection latencies.
+            long value = (long) (20_000_000 * Math.exp(random.nextGaussian() * 0.5));
+            values.add(value);
+            histogram.record(value);
+        }
+        values.sort(null);
+
+        assertEquals(values.size(), histogram.getCount());
+        assertEquals((long) values.get(values.size() - 1), histogram.getMax());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long exact = values.get((int) Math.ceil(percentile / 100 * values.size()) - 1);
+            long estimate = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " < " + exact, estimate >= exact);
+            assertTrue(percentile + ": " + estimate + " > " + exact,
+                    estimate <= exact * (1 + PRECISION));
+        }
+    }
+
+    @Test
+    public void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+
+        histogram.record(5);
+        histogram.record(-3);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(5, histogram.getValueAtPercentile(100));
+        assertEquals(2.5, histogram.getMean(), 1e-9);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void record_fromManyThreadsLosesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 4;
+        int perThread = 100_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(i);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals((long) threads * perThread, histogram.getCount());
+        assertEquals(perThread - 1, histogram.getMax());
+        assertEquals((perThread - 1) / 2.0, histogram.getMean(), 1e-6);
+    }
+}
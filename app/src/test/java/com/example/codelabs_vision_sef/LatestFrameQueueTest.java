@@ -0,0 +1,92 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link LatestFrameQueue} keeps only the most recent item and counts what it drops.
+ */
+public class LatestFrameQueueTest {
+
+    @Test
+    public void offer_replacesPendingItem() {
+        LatestFrameQueue<String> queue = new LatestFrameQueue<>();
+
+        assertNull(queue.offer("a"));
+        assertEquals("a", queue.offer("b"));
+        assertEquals("b", queue.offer("c"));
+
+        assertEquals("c", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(3, queue.getOfferedCount());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void take_waitsForOffer() throws InterruptedException {
+        LatestFrameQueue<String> queue = new LatestFrameQueue<>();
+        CountDownLatch taken = new CountDownLatch(1);
+        String[] result = new String[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                result[0] = queue.take();
+                taken.countDown();
+            } catch (InterruptedException e) {
+                // Fails below.
+            }
+        });
+        consumer.start();
+
+        assertFalse(taken.await(50, TimeUnit.MILLISECONDS));
+        queue.offer("frame");
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        assertEquals("frame", result[0]);
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void slowConsumer_onlySeesLatestItems() throws InterruptedException {
+        LatestFrameQueue<Integer> queue = new LatestFrameQueue<>();
+        int frames = 1000;
+        int[] takenCount = new int[1];
+        int[] last = {-1};
+        // Assertions thrown on the consumer thread would not fail the test, so they are kept.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                while (true) {
+                    int frame = queue.take();
+                    // Frames are never seen out of order.
+                    assertTrue(frame + " after " + last[0], frame > last[0]);
+                    last[0] = frame;
+                    takenCount[0]++;
+                    if (frame == frames - 1) {
+                        return;
+                    }
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                // Fails below.
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < frames; i++) {
+            queue.offer(i);
+        }
+        consumer.join(TimeUnit.SECONDS.toMillis(10));
+
+        if (failure.get() != null) {
+            throw new AssertionError("Consumer failed", failure.get());
+        }
+        assertFalse(consumer.isAlive());
+        assertEquals(frames - 1, last[0]);
+        assertEquals(frames, takenCount[0] + queue.getDroppedCount());
+    }
+}
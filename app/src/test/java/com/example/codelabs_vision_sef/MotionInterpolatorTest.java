@@ -0,0 +1,78 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link MotionInterpolator} glides and extrapolates between updates.
+ */
+public class MotionInterpolatorTest {
+    private static final long MS = 1_000_000L;
+    private static final float DELTA = 1e-3f;
+
+    @Test
+    public void firstUpdate_isShownAsIs() {
+        MotionInterpolator motion = new MotionInterpolator();
+        motion.update(new float[]{10, 20}, 2, 0);
+        float[] out = new float[2];
+
+        assertFalse(motion.sample(0, out));
+        assertArrayEquals(new float[]{10, 20}, out, DELTA);
+        assertFalse(motion.sample(500 * MS, out));
+        assertArrayEquals(new float[]{10, 20}, out, DELTA);
+    }
+
+    @Test
+    public void update_glidesFromDisplayedValues() {
+        MotionInterpolator motion = new MotionInterpolator();
+        float[] out = new float[1];
+        // The value moved by 100 in 100 ms, so it keeps moving at 1 per ms while gliding there.
+        motion.update(new float[]{0}, 1, 0);
+        motion.update(new float[]{100}, 1, 100 * MS);
+
+        assertTrue(motion.sample(100 * MS, out));
+        assertEquals(0, out[0], DELTA);
+        // Halfway through the 100 ms glide, plus 50 ms at 1 per ms.
+        assertTrue(motion.sample(150 * MS, out));
+        assertEquals(50 + 50, out[0], DELTA);
+        // Extrapolation stops after its maximum.
+        long end = 100 * MS + MotionInterpolator.MAX_EXTRAPOLATION_NANOS;
+        assertFalse(motion.sample(end, out));
+        assertEquals(100 + MotionInterpolator.MAX_EXTRAPOLATION_NANOS / MS, out[0], DELTA);
+        motion.sample(end + 1000 * MS, out);
+        assertEquals(100 + MotionInterpolator.MAX_EXTRAPOLATION_NANOS / MS, out[0], DELTA);
+    }
+
+    @Test
+    public void extremes_coverEverySample() {
+        MotionInterpolator motion = new MotionInterpolator();
+        motion.update(new float[]{0, 50}, 2, 0);
+        motion.update(new float[]{40, 10}, 2, 80 * MS);
+        motion.update(new float[]{20, 30}, 2, 180 * MS);
+        float[] min = new float[2];
+        float[] max = new float[2];
+        motion.getExtremes(min, max);
+
+        float[] out = new float[2];
+        for (long t = 180 * MS; t < 800 * MS; t += MS) {
+            motion.sample(t, out);
+            for (int i = 0; i < 2; i++) {
+                assertTrue(out[i] >= min[i] - DELTA);
+                assertTrue(out[i] <= max[i] + DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void update_withOtherSize_snaps() {
+        MotionInterpolator motion = new MotionInterpolator();
+        float[] out = new float[3];
+        motion.update(new float[]{0, 0}, 2, 0);
+        motion.update(new float[]{5, 6, 7}, 3, 100 * MS);
+
+        assertFalse(motion.sample(100 * MS, out));
+        assertArrayEquals(new float[]{5, 6, 7}, out, DELTA);
+        assertEquals(3, motion.size());
+    }
+}
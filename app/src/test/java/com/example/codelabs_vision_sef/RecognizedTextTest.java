@@ -0,0 +1,49 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link RecognizedText} survives being written and read back, as the detection cache
+ * does.
+ */
+public class RecognizedTextTest {
+
+    @Test
+    public void readFrom_returnsWrittenText() throws IOException {
+        RecognizedText text = new RecognizedText(
+                new float[]{1, 2, 3, 4, 10.5f, 20.25f, 30, 40},
+                new String[]{"Please", "grass \u00e9\u4e2d"});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        text.writeTo(new DataOutputStream(bytes));
+        RecognizedText read = RecognizedText.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, read.getCount());
+        assertArrayEquals(text.getBoxes(), read.getBoxes(), 0);
+        assertArrayEquals(text.getTexts(), read.getTexts());
+    }
+
+    @Test
+    public void equals_comparesTheElements() {
+        RecognizedText text = new RecognizedText(new float[]{1, 2, 3, 4}, new String[]{"grass"});
+        RecognizedText same = new RecognizedText(new float[]{1, 2, 3, 4}, new String[]{"grass"});
+        assertEquals(text, same);
+        assertEquals(text.hashCode(), same.hashCode());
+        assertNotEquals(text, new RecognizedText(new float[]{1, 2, 3, 5}, new String[]{"grass"}));
+        assertNotEquals(text, new RecognizedText(new float[]{1, 2, 3, 4}, new String[]{"grace"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsMismatchedArrays() {
+        new RecognizedText(new float[4], new String[2]);
+    }
+}
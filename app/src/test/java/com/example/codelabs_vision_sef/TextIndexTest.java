@@ -0,0 +1,139 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the queries of {@link TextIndex} against testing every element.
+ */
+public class TextIndexTest {
+    private static final int ELEMENTS = 10_000;
+    private static final int QUERIES = 2_000;
+
+    /**
+     * Returns boxes of words in lines over a page, with some long lines and some boxes stacked on
+     * others, the way recognized documents look.
+     */
+    private static float[] newBoxes(Random random, int count) {
+        float[] boxes = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            float left = random.nextFloat() * 3000;
+            float top = random.nextFloat() * 4000;
+            // One in twenty is a long line.
+            float width = random.nextInt(20) == 0
+                    ? random.nextFloat() * 2000 : 20 + random.nextFloat() * 150;
+            float height = 10 + random.nextFloat() * 50;
+            boxes[i * 4] = left;
+            boxes[i * 4 + 1] = top;
+            boxes[i * 4 + 2] = left + width;
+            boxes[i * 4 + 3] = top + height;
+        }
+        return boxes;
+    }
+
+    private static int[] bruteForceIntersecting(float[] boxes, float left, float top, float right,
+                                                float bottom) {
+        int[] found = new int[boxes.length / 4];
+        int count = 0;
+        for (int i = 0; i < boxes.length / 4; i++) {
+            if (boxes[i * 4] <= right && boxes[i * 4 + 2] >= left
+                    && boxes[i * 4 + 1] <= bottom && boxes[i * 4 + 3] >= top) {
+                found[count++] = i;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static float distanceSquared(float[] boxes, int i, float x, float y) {
+        float dx = Math.max(0, Math.max(boxes[i * 4] - x, x - boxes[i * 4 + 2]));
+        float dy = Math.max(0, Math.max(boxes[i * 4 + 1] - y, y - boxes[i * 4 + 3]));
+        return dx * dx + dy * dy;
+    }
+
+    @Test
+    public void findIntersecting_matchesBruteForce() {
+        Random random = new Random(5);
+        float[] boxes = newBoxes(random, ELEMENTS);
+        TextIndex index = new TextIndex(boxes);
+        assertEquals(ELEMENTS, index.getCount());
+        int[] out = new int[ELEMENTS];
+        for (int q = 0; q < QUERIES; q++) {
+            // Rectangles from a point to a third of the page, some of them past its edges.
+            float left = random.nextFloat() * 3600 - 300;
+            float top = random.nextFloat() * 4600 - 300;
+            float right = left + (q % 4 == 0 ? 0 : random.nextFloat() * 1000);
+            float bottom = top + (q % 4 == 0 ? 0 : random.nextFloat() * 1300);
+
+            int found = index.findIntersecting(left, top, right, bottom, out);
+            int[] actual = Arrays.copyOf(out, found);
+            Arrays.sort(actual);
+            assertArrayEquals(bruteForceIntersecting(boxes, left, top, right, bottom), actual);
+        }
+    }
+
+    @Test
+    public void findIntersecting_countsBeyondTheOutputArray() {
+        float[] boxes = newBoxes(new Random(6), ELEMENTS);
+        TextIndex index = new TextIndex(boxes);
+        int[] out = new int[3];
+        assertEquals(ELEMENTS, index.findIntersecting(-1, -1, 10_000, 10_000, out));
+        assertEquals(0, index.findIntersecting(10, 10, 0, 0, out));
+    }
+
+    @Test
+    public void findAt_findsTheClosestElementWithinSlop() {
+        Random random = new Random(7);
+        float[] boxes = newBoxes(random, ELEMENTS);
+        TextIndex index = new TextIndex(boxes);
+        float slop = 24;
+        for (int q = 0; q < QUERIES; q++) {
+            float x = random.nextFloat() * 3200 - 100;
+            float y = random.nextFloat() * 4200 - 100;
+
+            int expected = -1;
+            float expectedDistance = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < ELEMENTS; i++) {
+                float dx = Math.max(0, Math.max(boxes[i * 4] - x, x - boxes[i * 4 + 2]));
+                float dy = Math.max(0, Math.max(boxes[i * 4 + 1] - y, y - boxes[i * 4 + 3]));
+                if (dx <= slop && dy <= slop && dx * dx + dy * dy < expectedDistance) {
+                    expected = i;
+                    expectedDistance = dx * dx + dy * dy;
+                }
+            }
+            int actual = index.findAt(x, y, slop);
+            if (expected == -1) {
+                assertEquals(-1, actual);
+            } else {
+                // Several elements may be as close, inside a box all are at distance 0.
+                assertNotEquals(-1, actual);
+                assertEquals(distanceSquared(boxes, expected, x, y),
+                        distanceSquared(boxes, actual, x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void findAt_prefersTheSmallestContainingElement() {
+        float[] boxes = {
+                0, 0, 100, 100,
+                40, 40, 60, 60,
+                0, 0, 50, 50};
+        TextIndex index = new TextIndex(boxes);
+        assertEquals(1, index.findAt(50, 50, 0));
+        assertEquals(2, index.findAt(10, 10, 0));
+        assertEquals(0, index.findAt(90, 90, 0));
+        assertEquals(-1, index.findAt(110, 90, 5));
+        assertEquals(0, index.findAt(110, 90, 10));
+    }
+
+    @Test
+    public void emptyIndex_findsNothing() {
+        TextIndex index = new TextIndex(new float[0]);
+        assertEquals(-1, index.findAt(0, 0, 10));
+        assertEquals(0, index.findIntersecting(-10, -10, 10, 10, new int[1]));
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local tests of {@link TextLayerGraphic}, run against the stubbed Android classes.
+ */
+public class TextLayerGraphicTest {
+    private static final int ELEMENTS = 1000;
+    private static final int FRAMES = 1000;
+
+    @Test
+    public void draw_allocatesNothingPerFrame() {
+        float[] boxes = new float[ELEMENTS * 4];
+        String[] texts = new String[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++) {
+            boxes[i * 4] = i;
+            boxes[i * 4 + 1] = i;
+            boxes[i * 4 + 2] = i + 10;
+            boxes[i * 4 + 3] = i + 10;
+            texts[i] = "word" + i;
+        }
+        GraphicOverlay overlay = new GraphicOverlay(null, null);
+        TextLayerGraphic layer = new TextLayerGraphic(overlay, boxes, texts);
+        Canvas canvas = new Canvas();
+
+        assertEquals(0, Allocations.bytesPerRun(FRAMES, () -> layer.draw(canvas)));
+    }
+
+    private static RecognizedText newText(String... words) {
+        float[] boxes = new float[words.length * 4];
+        for (int i = 0; i < words.length; i++) {
+            boxes[i * 4] = i * 100;
+            boxes[i * 4 + 1] = 0;
+            boxes[i * 4 + 2] = i * 100 + 80;
+            boxes[i * 4 + 3] = 50;
+        }
+        return new RecognizedText(boxes, words);
+    }
+
+    private static String[] textsOf(TextLayerGraphic layer) {
+        String[] texts = new String[layer.getCount()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = layer.getText(i);
+        }
+        return texts;
+    }
+
+    @Test
+    public void update_keepsTheSlotsOfUnchangedElements() {
+        TextLayerGraphic layer = new TextLayerGraphic(new GraphicOverlay(null, null));
+        assertTrue(layer.update(newText("Please", "walk", "on", "the", "grass")));
+        assertEquals(5, layer.getCreatedCount());
+        layer.setSelected(3);
+
+        // "walk" became "talk" at the same place, "grass" is gone.
+        assertTrue(layer.update(newText("Please", "talk", "on", "the")));
+        // The last kept element fills the first free slot, new ones are appended.
+        assertArrayEquals(new String[]{"Please", "the", "on", "talk"}, textsOf(layer));
+        assertEquals("the", layer.getText(layer.getSelected()));
+        assertEquals(6, layer.getCreatedCount());
+        assertEquals(3, layer.getReusedCount());
+        assertEquals(2, layer.getRemovedCount());
+
+        assertFalse(layer.update(newText("Please", "talk", "on", "the")));
+        assertEquals(6, layer.getCreatedCount());
+        assertEquals(7, layer.getReusedCount());
+        assertEquals(4, layer.copyBoxes().length / 4);
+    }
+
+    @Test
+    public void update_dropsTheSelectionOfARemovedElement() {
+        TextLayerGraphic layer = new TextLayerGraphic(new GraphicOverlay(null, null));
+        layer.update(newText("Please", "walk"));
+        layer.setSelected(1);
+        layer.update(newText("Please"));
+        assertEquals(-1, layer.getSelected());
+        layer.update(newText());
+        assertEquals(0, layer.getCount());
+        assertEquals(2, layer.getRemovedCount());
+    }
+
+    @Test
+    public void update_matchesRepeatedElementsOnce() {
+        TextLayerGraphic layer = new TextLayerGraphic(new GraphicOverlay(null, null));
+        RecognizedText twice = new RecognizedText(new float[]{0, 0, 10, 10, 0, 0, 10, 10},
+                new String[]{"a", "a"});
+        layer.update(twice);
+        assertFalse(layer.update(twice));
+        assertEquals(2, layer.getCount());
+        assertEquals(2, layer.getReusedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsMismatchedArrays() {
+        new TextLayerGraphic(new GraphicOverlay(null, null), new float[3], new String[1]);
+    }
+}
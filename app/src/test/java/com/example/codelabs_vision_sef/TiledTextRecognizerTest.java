@@ -0,0 +1,106 @@
+package com.example.codelabs_vision_sef;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the tiling and the merging across tile seams of {@link TiledTextRecognizer}.
+ */
+public class TiledTextRecognizerTest {
+    private static final int TILE_SIZE = 1024;
+    private static final int OVERLAP = 128;
+
+    @Test
+    public void computeTiles_coverImageWithOverlap() {
+        int[][] sizes = {{4000, 3000}, {1024, 1024}, {800, 600}, {1025, 3000}, {8000, 6000}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            int[] tiles = TiledTextRecognizer.computeTiles(width, height, TILE_SIZE, OVERLAP);
+            boolean[][] covered = new boolean[height / 8][width / 8];
+            for (int i = 0; i < tiles.length; i += 4) {
+                assertTrue(tiles[i] >= 0 && tiles[i + 1] >= 0);
+                assertTrue(tiles[i + 2] <= width && tiles[i + 3] <= height);
+                assertTrue(tiles[i + 2] - tiles[i] <= TILE_SIZE);
+                assertTrue(tiles[i + 3] - tiles[i + 1] <= TILE_SIZE);
+                for (int y = tiles[i + 1] / 8; y < tiles[i + 3] / 8; y++) {
+                    for (int x = tiles[i] / 8; x < tiles[i + 2] / 8; x++) {
+                        covered[y][x] = true;
+                    }
+                }
+            }
+            for (boolean[] row : covered) {
+                for (boolean cell : row) {
+                    assertTrue(cell);
+                }
+            }
+            // Neighbouring tiles along a row share at least the overlap.
+            for (int i = 4; i < tiles.length; i += 4) {
+                if (tiles[i + 1] == tiles[i - 3]) {
+                    assertTrue(tiles[i - 2] - tiles[i] >= OVERLAP);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void merge_keepsOneCopyOfElementsInOverlap() {
+        // Two tiles side by side, overlapping between x = 900 and x = 1024.
+        int[] tiles = {0, 0, 1024, 1000, 900, 0, 1924, 1000};
+        List<RecognizedText> results = Arrays.asList(
+                new RecognizedText(new float[]{100, 100, 200, 130, 950, 300, 1000, 330},
+                        new String[]{"left", "seam"}),
+                new RecognizedText(new float[]{50, 300, 100, 330, 500, 100, 600, 130},
+                        new String[]{"seam", "right"}));
+
+        RecognizedText merged = TiledTextRecognizer.merge(tiles, results, 1924, 1000);
+
+        assertEquals(Arrays.asList("left", "seam", "right"), sorted(merged.getTexts()));
+        assertBox(merged, "right", 1400, 100, 1500, 130);
+    }
+
+    @Test
+    public void merge_prefersCompleteElementOverCutOne() {
+        int[] tiles = {0, 0, 1024, 1000, 900, 0, 1924, 1000};
+        List<RecognizedText> results = Arrays.asList(
+                // Cut by the right edge of the first tile.
+                new RecognizedText(new float[]{980, 500, 1023, 530}, new String[]{"smal"}),
+                new RecognizedText(new float[]{80, 500, 160, 530}, new String[]{"small"}));
+
+        RecognizedText merged = TiledTextRecognizer.merge(tiles, results, 1924, 1000);
+
+        assertEquals(Collections.singletonList("small"), sorted(merged.getTexts()));
+        assertBox(merged, "small", 980, 500, 1060, 530);
+    }
+
+    @Test
+    public void intersectionOverSmaller_isOneForContainedBox() {
+        assertEquals(1, TiledTextRecognizer.intersectionOverSmaller(
+                new float[]{0, 0, 100, 100}, new float[]{10, 10, 20, 20}), 1e-6);
+        assertEquals(0, TiledTextRecognizer.intersectionOverSmaller(
+                new float[]{0, 0, 10, 10}, new float[]{10, 0, 20, 10}), 1e-6);
+    }
+
+    private static List<String> sorted(String[] texts) {
+        String[] copy = texts.clone();
+        Arrays.sort(copy, (a, b) -> order(a) - order(b));
+        return Arrays.asList(copy);
+    }
+
+    private static int order(String text) {
+        return Arrays.asList("left", "seam", "small", "right").indexOf(text);
+    }
+
+    private static void assertBox(RecognizedText text, String element, float left, float top,
+                                  float right, float bottom) {
+        int index = Arrays.asList(text.getTexts()).indexOf(element);
+        float[] boxes = text.getBoxes();
+        assertArrayEquals(new float[]{left, top, right, bottom},
+                Arrays.copyOfRange(boxes, index * 4, index * 4 + 4), 0);
+    }
+}
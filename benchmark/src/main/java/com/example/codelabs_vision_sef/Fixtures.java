@@ -0,0 +1,94 @@
+package com.example.codelabs_vision_sef;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inputs shared by the benchmarks: an overlay of a typical phone size and synthetic detection
+ * results spread over it.
+ */
+final class Fixtures {
+    static final int VIEW_WIDTH = 1080;
+    static final int VIEW_HEIGHT = 1920;
+    static final String ASSET = "grace_hopper.jpg";
+    // Contour and landmark points of a face with every contour, as FaceData flattens them.
+    private static final int FACE_POINTS = 137;
+
+    private Fixtures() {
+    }
+
+    static Context getContext() {
+        return InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    /**
+     * Returns an overlay laid out at the view size, showing image coordinates unscaled.
+     */
+    static GraphicOverlay newOverlay() {
+        GraphicOverlay overlay = new GraphicOverlay(getContext(), null);
+        overlay.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+        overlay.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        return overlay;
+    }
+
+    /**
+     * Returns a canvas drawing into a bitmap of the view size.
+     */
+    static Canvas newCanvas() {
+        return new Canvas(Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888));
+    }
+
+    /**
+     * Returns elements laid out in rows of words covering the view.
+     */
+    static RecognizedText newText(int count) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        float cellWidth = (float) VIEW_WIDTH / columns;
+        float cellHeight = (float) VIEW_HEIGHT / columns;
+        float[] boxes = new float[count * 4];
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            float left = (i % columns) * cellWidth;
+            float top = (i / columns) * cellHeight;
+            boxes[i * 4] = left;
+            boxes[i * 4 + 1] = top;
+            boxes[i * 4 + 2] = left + cellWidth * 0.8f;
+            boxes[i * 4 + 3] = top + cellHeight * 0.6f;
+            texts[i] = "word" + i;
+        }
+        return new RecognizedText(boxes, texts);
+    }
+
+    /**
+     * Returns faces with every contour, laid out in a grid covering the view.
+     */
+    static List<FaceData> newFaces(int count) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        float cellWidth = (float) VIEW_WIDTH / columns;
+        float cellHeight = (float) VIEW_HEIGHT / columns;
+        List<FaceData> faces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float centerX = (i % columns + 0.5f) * cellWidth;
+            float centerY = (i / columns + 0.5f) * cellHeight;
+            float radiusX = cellWidth * 0.4f;
+            float radiusY = cellHeight * 0.4f;
+            float[] points = new float[FACE_POINTS * 2];
+            for (int p = 0; p < FACE_POINTS; p++) {
+                double angle = 2 * Math.PI * p / FACE_POINTS;
+                points[p * 2] = centerX + (float) (radiusX * Math.cos(angle));
+                points[p * 2 + 1] = centerY + (float) (radiusY * Math.sin(angle));
+            }
+            faces.add(new FaceData(centerX - radiusX, centerY - radiusY, centerX + radiusX,
+                    centerY + radiusY, points, i, 0.5f, 0.9f, 0.9f));
+        }
+        return faces;
+    }
+}
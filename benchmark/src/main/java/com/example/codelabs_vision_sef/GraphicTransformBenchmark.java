@@ -0,0 +1,95 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+import android.hardware.camera2.CameraCharacteristics;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures mapping points from image to view coordinates, which graphics do for every point they
+ * draw, one coordinate at a time and all at once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GraphicTransformBenchmark {
+    // Points mapped per iteration, about one face.
+    private static final int POINTS = 137;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private GraphicOverlay overlay;
+    private GraphicOverlay.Graphic graphic;
+    // Keeps the results alive, so the mapping is not optimized away.
+    private float sink;
+
+    @Before
+    public void setUp() {
+        overlay = Fixtures.newOverlay();
+        graphic = new GraphicOverlay.Graphic(overlay) {
+            @Override
+            public void draw(Canvas canvas) {
+            }
+        };
+    }
+
+    @Test
+    public void translateBackFacing() {
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_BACK);
+        measureTranslate();
+    }
+
+    @Test
+    public void translateFrontFacing() {
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_FRONT);
+        measureTranslate();
+    }
+
+    @Test
+    public void scale() {
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_BACK);
+        BenchmarkState state = benchmarkRule.getState();
+        float sum = 0;
+        while (state.keepRunning()) {
+            for (int i = 0; i < POINTS; i++) {
+                sum += graphic.scaleX(i) + graphic.scaleY(i);
+            }
+        }
+        sink = sum;
+    }
+
+    @Test
+    public void mapPointsFrontFacing() {
+        overlay.setImageInfo(3024, 4032, CameraCharacteristics.LENS_FACING_FRONT);
+        float[] points = new float[POINTS * 2];
+        for (int i = 0; i < POINTS; i++) {
+            points[i * 2] = i;
+            points[i * 2 + 1] = i;
+        }
+        float[] mapped = new float[POINTS * 2];
+        BenchmarkState state = benchmarkRule.getState();
+        float sum = 0;
+        while (state.keepRunning()) {
+            graphic.getTransform().mapPoints(mapped, 0, points, 0, POINTS);
+            sum += mapped[POINTS];
+        }
+        sink = sum;
+    }
+
+    private void measureTranslate() {
+        BenchmarkState state = benchmarkRule.getState();
+        float sum = 0;
+        while (state.keepRunning()) {
+            for (int i = 0; i < POINTS; i++) {
+                sum += graphic.translateX(i) + graphic.translateY(i);
+            }
+        }
+        sink = sum;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.util.Pair;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures decoding a bundled image and resizing it to the view, the way a selected image is
+ * prepared for display and detection.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImagePipelineBenchmark {
+    private static final Pair<Integer, Integer> TARGET_SIZE =
+            new Pair<>(Fixtures.VIEW_WIDTH, Fixtures.VIEW_HEIGHT);
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Bitmap source;
+
+    @Before
+    public void setUp() {
+        source = MainActivity.getBitmapFromAsset(Fixtures.getContext(), Fixtures.ASSET);
+    }
+
+    @After
+    public void tearDown() {
+        source.recycle();
+    }
+
+    @Test
+    public void decodeAsset() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            MainActivity.getBitmapFromAsset(Fixtures.getContext(), Fixtures.ASSET).recycle();
+        }
+    }
+
+    @Test
+    public void decodeAssetSampled() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            MainActivity.getBitmapFromAsset(Fixtures.getContext(), Fixtures.ASSET, TARGET_SIZE)
+                    .recycle();
+        }
+    }
+
+    @Test
+    public void resizeBitmap() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Bitmap resized = MainActivity.resizeBitmap(source, TARGET_SIZE);
+            if (resized != source) {
+                resized.recycle();
+            }
+        }
+    }
+
+    @Test
+    public void resizeBitmapPooled() {
+        BitmapPool pool = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Bitmap resized = MainActivity.resizeBitmap(source, TARGET_SIZE, pool);
+            if (resized != source) {
+                pool.put(resized);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Bitmap;
+import android.util.Pair;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.text.TextRecognition;
+import com.google.mlkit.vision.text.TextRecognizer;
+import com.google.mlkit.vision.text.latin.TextRecognizerOptions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares detection on a bitmap, which every detector converts on its own, with detection on an
+ * image converted once to NV21 by {@link InputImagePreparer}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InputImageBenchmark {
+    private static final Pair<Integer, Integer> TARGET_SIZE =
+            new Pair<>(Fixtures.VIEW_WIDTH, Fixtures.VIEW_HEIGHT);
+    private static final FaceDetectorOptions FACE_OPTIONS = new FaceDetectorOptions.Builder()
+            .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
+            .setContourMode(FaceDetectorOptions.CONTOUR_MODE_ALL)
+            .build();
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private LifecycleRegistry lifecycle;
+    private InputImagePreparer preparer;
+    private TextRecognizer textRecognizer;
+    private FaceDetector faceDetector;
+    private Bitmap source;
+
+    @Before
+    public void setUp() {
+        LifecycleOwner owner = () -> lifecycle;
+        lifecycle = LifecycleRegistry.createUnsafe(owner);
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
+        preparer = new InputImagePreparer(owner, 1);
+        textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
+        faceDetector = FaceDetection.getClient(FACE_OPTIONS);
+        Bitmap decoded = MainActivity.getBitmapFromAsset(Fixtures.getContext(), Fixtures.ASSET,
+                TARGET_SIZE);
+        // Mutable, so touch() can mark it changed.
+        source = decoded.copy(Bitmap.Config.ARGB_8888, true);
+        decoded.recycle();
+    }
+
+    @After
+    public void tearDown() {
+        lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+        textRecognizer.close();
+        faceDetector.close();
+        source.recycle();
+    }
+
+    /**
+     * Marks the pixels as changed, so the next preparation converts them again.
+     */
+    private void touch() {
+        source.setPixel(0, 0, source.getPixel(0, 0));
+    }
+
+    @Test
+    public void convertToNv21() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            touch();
+            preparer.prepareNow(source).release();
+        }
+    }
+
+    @Test
+    public void textFromBitmap() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Tasks.await(textRecognizer.process(InputImage.fromBitmap(source, 0)));
+        }
+    }
+
+    @Test
+    public void textFromNv21() throws Exception {
+        Nv21Image image = preparer.prepareNow(source);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Tasks.await(textRecognizer.process(image.newInputImage()));
+        }
+        image.release();
+    }
+
+    @Test
+    public void facesFromBitmap() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Tasks.await(faceDetector.process(InputImage.fromBitmap(source, 0)));
+        }
+    }
+
+    @Test
+    public void facesFromNv21() throws Exception {
+        Nv21Image image = preparer.prepareNow(source);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Tasks.await(faceDetector.process(image.newInputImage()));
+        }
+        image.release();
+    }
+
+    @Test
+    public void bothFromBitmap() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Tasks.await(Tasks.whenAllComplete(
+                    textRecognizer.process(InputImage.fromBitmap(source, 0)),
+                    faceDetector.process(InputImage.fromBitmap(source, 0))));
+        }
+    }
+
+    /**
+     * Both detectors on one conversion per iteration, the way a new frame is analyzed.
+     */
+    @Test
+    public void bothFromNv21() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            touch();
+            Nv21Image image = preparer.prepareNow(source);
+            Tasks.await(Tasks.whenAllComplete(
+                    textRecognizer.process(image.newInputImage()),
+                    faceDetector.process(image.newInputImage())));
+            image.release();
+        }
+    }
+}
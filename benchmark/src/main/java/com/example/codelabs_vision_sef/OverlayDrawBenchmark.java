@@ -0,0 +1,98 @@
+package com.example.codelabs_vision_sef;
+
+import android.graphics.Canvas;
+import android.hardware.camera2.CameraCharacteristics;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Measures drawing a frame of the overlay holding a growing number of text elements or faces.
+ * <p>
+ * <p>Text is drawn the way the app shows recognition results, by one {@link TextLayerGraphic} for
+ * all elements. Faces are drawn by one {@link FaceContourGraphic} each, at rest.
+ * <p>
+ * <p>The draw benchmarks draw every graphic on every frame. The redraw benchmarks leave recording
+ * on, so after the first frames the overlay replays its recording of the unchanged graphics, the
+ * way {@link GraphicOverlay#onDraw} runs again without a new state, for example in software.
+ */
+@RunWith(Parameterized.class)
+public class OverlayDrawBenchmark {
+    @Parameterized.Parameters(name = "count={0}")
+    public static Collection<Object[]> counts() {
+        return Arrays.asList(new Object[][]{{10}, {100}, {1000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int count;
+    private GraphicOverlay overlay;
+    private Canvas canvas;
+
+    public OverlayDrawBenchmark(int count) {
+        this.count = count;
+    }
+
+    @Before
+    public void setUp() {
+        overlay = Fixtures.newOverlay();
+        overlay.setCameraInfo(0, 0, CameraCharacteristics.LENS_FACING_BACK);
+        canvas = Fixtures.newCanvas();
+    }
+
+    @Test
+    public void drawText() {
+        overlay.setRecordingEnabled(false);
+        addText();
+        measureDraw();
+    }
+
+    @Test
+    public void drawFaces() {
+        overlay.setRecordingEnabled(false);
+        addFaces();
+        measureDraw();
+    }
+
+    @Test
+    public void redrawTextRecorded() {
+        addText();
+        measureDraw();
+    }
+
+    @Test
+    public void redrawFacesRecorded() {
+        addFaces();
+        measureDraw();
+    }
+
+    private void addText() {
+        overlay.replaceAll(Collections.singletonList(
+                new TextLayerGraphic(overlay, Fixtures.newText(count))));
+    }
+
+    private void addFaces() {
+        FaceGraphicTracker tracker = new FaceGraphicTracker(overlay);
+        tracker.update(Fixtures.newFaces(count));
+        // The first frame ends the motion towards the new faces.
+        overlay.draw(canvas);
+    }
+
+    private void measureDraw() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            overlay.draw(canvas);
+        }
+    }
+}
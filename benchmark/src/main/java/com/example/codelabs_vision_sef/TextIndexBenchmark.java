@@ -0,0 +1,72 @@
+package com.example.codelabs_vision_sef;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures building a {@link TextIndex} over a recognized page and querying it, the way a tap
+ * selects a word.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextIndexBenchmark {
+    private static final int ELEMENTS = 10_000;
+    // Tap slop in view pixels, as MainActivity uses it at scale 1.
+    private static final float SLOP = 24;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private RecognizedText text;
+    private TextIndex index;
+    // Keeps the results alive, so the queries are not optimized away.
+    private int sink;
+
+    @Before
+    public void setUp() {
+        text = Fixtures.newText(ELEMENTS);
+        index = new TextIndex(text);
+    }
+
+    @Test
+    public void build() {
+        BenchmarkState state = benchmarkRule.getState();
+        int sum = 0;
+        while (state.keepRunning()) {
+            sum += new TextIndex(text).getCount();
+        }
+        sink = sum;
+    }
+
+    @Test
+    public void findAt() {
+        BenchmarkState state = benchmarkRule.getState();
+        int sum = 0;
+        int i = 0;
+        while (state.keepRunning()) {
+            // Taps across the view, on words and between them.
+            float x = (i * 97) % Fixtures.VIEW_WIDTH;
+            float y = (i * 389) % Fixtures.VIEW_HEIGHT;
+            sum += index.findAt(x, y, SLOP);
+            i++;
+        }
+        sink = sum;
+    }
+
+    @Test
+    public void findIntersectingQuarterView() {
+        int[] out = new int[ELEMENTS];
+        BenchmarkState state = benchmarkRule.getState();
+        int sum = 0;
+        while (state.keepRunning()) {
+            sum += index.findIntersecting(Fixtures.VIEW_WIDTH / 4f, Fixtures.VIEW_HEIGHT / 4f,
+                    Fixtures.VIEW_WIDTH * 3 / 4f, Fixtures.VIEW_HEIGHT * 3 / 4f, out);
+        }
+        sink = sum;
+    }
+}
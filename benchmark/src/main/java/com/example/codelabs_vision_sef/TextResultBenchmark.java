@@ -0,0 +1,91 @@
+package com.example.codelabs_vision_sef;
+
+import android.hardware.camera2.CameraCharacteristics;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures showing a text recognition result the way the app does, with
+ * {@link ResultOverlay#show}: reconciling the graphics with the result shown before and indexing
+ * the text for selection, before the next frame is drawn. Every element of a result differs from
+ * the previous one, or one word does, as between frames of a stream, or none does, as when an
+ * unchanged image is detected again.
+ */
+@RunWith(Parameterized.class)
+public class TextResultBenchmark {
+    @Parameterized.Parameters(name = "count={0}")
+    public static Collection<Object[]> counts() {
+        return Arrays.asList(new Object[][]{{10}, {100}, {1000}});
+    }
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final int count;
+    private GraphicOverlay overlay;
+    private ResultOverlay results;
+    private RecognizedText text;
+    // Equal to text but a different instance, as detecting an unchanged image again returns.
+    private RecognizedText sameText;
+    // Every element moved, as after detecting another image.
+    private RecognizedText otherText;
+    // The first word read differently.
+    private RecognizedText oneWordChangedText;
+
+    public TextResultBenchmark(int count) {
+        this.count = count;
+    }
+
+    @Before
+    public void setUp() {
+        overlay = Fixtures.newOverlay();
+        results = new ResultOverlay(overlay);
+        text = Fixtures.newText(count);
+        sameText = new RecognizedText(text.getBoxes().clone(), text.getTexts().clone());
+        float[] otherBoxes = text.getBoxes().clone();
+        for (int i = 0; i < otherBoxes.length; i++) {
+            otherBoxes[i] += 1;
+        }
+        otherText = new RecognizedText(otherBoxes, text.getTexts());
+        String[] changedTexts = text.getTexts().clone();
+        changedTexts[0] += "s";
+        oneWordChangedText = new RecognizedText(text.getBoxes(), changedTexts);
+    }
+
+    @Test
+    public void processTextResult() {
+        measureShow(otherText);
+    }
+
+    @Test
+    public void processTextResultOneWordChanged() {
+        measureShow(oneWordChangedText);
+    }
+
+    @Test
+    public void processRepeatedTextResult() {
+        measureShow(sameText);
+    }
+
+    /**
+     * Shows the text and the given result alternately.
+     */
+    private void measureShow(RecognizedText next) {
+        BenchmarkState state = benchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            overlay.setCameraInfo(0, 0, CameraCharacteristics.LENS_FACING_BACK);
+            results.show(i++ % 2 == 0 ? text : next, null);
+        }
+    }
+}